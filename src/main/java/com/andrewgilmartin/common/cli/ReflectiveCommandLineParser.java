@@ -7,7 +7,6 @@ package com.andrewgilmartin.common.cli;
  */
 import com.andrewgilmartin.common.exceptions.CommonIllegalArgumentException;
 import com.andrewgilmartin.common.exceptions.CommonIllegalStateException;
-import com.andrewgilmartin.common.lang.LangUtils;
 import com.andrewgilmartin.common.lang.MethodRunner;
 import java.beans.PropertyEditor;
 import java.beans.PropertyEditorManager;
@@ -15,7 +14,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -64,6 +65,14 @@ import java.util.Set;
  */
 public class ReflectiveCommandLineParser {
 
+    // constants
+    private static final ClassValue<MethodIndex> INDEXES = new ClassValue<MethodIndex>() {
+        @Override
+        protected MethodIndex computeValue(Class<?> type) {
+            return new MethodIndex(type);
+        }
+    };
+
     /**
      * Parse the given arguments against the methods of the given tool. Start
      * parsing the arguments array at offset zero. Once parsed run the tool.
@@ -110,16 +119,17 @@ public class ReflectiveCommandLineParser {
                         }
                         usedSetters.add(optionRunner);
                     }
+                    Class<?>[] parameterTypes = optionRunner.getParameterTypes();
                     // is it a "flag" option, ie no arguments
-                    if (optionRunner.getMethod().getParameterTypes().length == 0) {
+                    if (parameterTypes.length == 0) {
                         // call the option method
                         optionRunner.run();
                     } // are there enough arguments for the option
-                    else if (argumentIndex + optionRunner.getParameterTypes().length - 1 < arguments.length) {
+                    else if (argumentIndex + parameterTypes.length - 1 < arguments.length) {
                         // convert the arguments from text to objects
-                        Object[] parameterValues = new Object[optionRunner.getParameterTypes().length];
-                        for (int p = 0; p < optionRunner.getParameterTypes().length; p++) {
-                            parameterValues[p] = convertArgumentValue(optionRunner.getParameterTypes()[p], arguments[argumentIndex++]);
+                        Object[] parameterValues = new Object[parameterTypes.length];
+                        for (int p = 0; p < parameterTypes.length; p++) {
+                            parameterValues[p] = convertArgumentValue(parameterTypes[p], arguments[argumentIndex++]);
                         }
                         // call the option method
                         optionRunner.run(parameterValues);
@@ -138,6 +148,7 @@ public class ReflectiveCommandLineParser {
         // parse the positonal arguments
         MethodRunner positionalRunner = getOptionMethodRunner(tool, "positional");
         if (positionalRunner != null) {
+            Class<?>[] parameterTypes = positionalRunner.getParameterTypes();
             while (argumentIndex < arguments.length) {
                 // has the positional setter option be used before?
                 if (positionalRunner.getName().startsWith("set")) {
@@ -147,11 +158,11 @@ public class ReflectiveCommandLineParser {
                     usedSetters.add(positionalRunner);
                 }
                 // are there enough positional arguments for the method?
-                if (argumentIndex + positionalRunner.getParameterTypes().length - 1 < arguments.length) {
+                if (argumentIndex + parameterTypes.length - 1 < arguments.length) {
                     // convert the arguments from text to objects
-                    Object[] parameterValues = new Object[positionalRunner.getParameterTypes().length];
-                    for (int p = 0; p < positionalRunner.getParameterTypes().length; p++) {
-                        parameterValues[p] = convertArgumentValue(positionalRunner.getParameterTypes()[p], arguments[argumentIndex++]);
+                    Object[] parameterValues = new Object[parameterTypes.length];
+                    for (int p = 0; p < parameterTypes.length; p++) {
+                        parameterValues[p] = convertArgumentValue(parameterTypes[p], arguments[argumentIndex++]);
                     }
                     // call the positional method
                     positionalRunner.run(parameterValues);
@@ -183,20 +194,18 @@ public class ReflectiveCommandLineParser {
     /**
      * Find the given method with in the given instance or any of its outer
      * class instances. That is, if A is an inner-class of B and B is an inner-
-     * class of C then A, B, and C will be search for the method name.
+     * class of C then A, B, and C will be search for the method name. Each
+     * class's methods are indexed once, see {@link MethodIndex}.
      */
     protected MethodRunner findMethodRunner(Object instance, String methodName) throws CommonIllegalArgumentException {
         while (instance != null) {
-            for (Method method : instance.getClass().getDeclaredMethods()) {
-                if (method.getName().equals(methodName)) {
-                    return new MethodRunner(instance, method);
-                }
+            MethodIndex index = INDEXES.get(instance.getClass());
+            Method method = index.methods.get(methodName);
+            if (method != null) {
+                return new MethodRunner(instance, method);
             }
             try {
-                Field this$0 = instance.getClass().getDeclaredField("this$0");
-                instance = LangUtils.get(this$0, instance);
-            } catch (NoSuchFieldException e) {
-                instance = null;
+                instance = index.outer != null ? index.outer.get(instance) : null;
             } catch (IllegalAccessException e) {
                 throw new CommonIllegalStateException(e);
             }
@@ -269,6 +278,31 @@ public class ReflectiveCommandLineParser {
             throw new CommonIllegalArgumentException(e);
         }
     }
+
+    /**
+     * A class's declared methods by name, the first declared of a name
+     * winning, and its outer instance field, if any. Built once per class and
+     * shared by all parsers.
+     */
+    private static final class MethodIndex {
+
+        final Map<String, Method> methods = new HashMap<>();
+        final Field outer;
+
+        MethodIndex(Class<?> type) {
+            for (Method method : type.getDeclaredMethods()) {
+                methods.putIfAbsent(method.getName(), method);
+            }
+            Field this$0 = null;
+            try {
+                this$0 = type.getDeclaredField("this$0");
+                this$0.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                // not an inner class
+            }
+            this.outer = this$0;
+        }
+    }
 }
 
 // END
@@ -3,8 +3,8 @@ package com.andrewgilmartin.common.cli;
 import com.andrewgilmartin.common.cli.ReflectiveCommandLineParser;
 import com.andrewgilmartin.common.text.SimpleMessageFormat;
 import com.andrewgilmartin.common.util.logger.CommonLogger;
+import com.andrewgilmartin.common.util.logger.JfrEvents;
 import java.util.Properties;
-import org.apache.log4j.PropertyConfigurator;
 
 public class ToolBase implements Tool, Runnable {
 
@@ -16,7 +16,7 @@ public class ToolBase implements Tool, Runnable {
             p.put("log4j.appender.console", "org.apache.log4j.ConsoleAppender");
             p.put("log4j.appender.console.layout", "org.apache.log4j.PatternLayout");
             p.put("log4j.appender.console.layout.conversionPattern", "%d{ISO8601} %p %t %c{2} %m%n");
-            PropertyConfigurator.configure(p);
+            CommonLogger.configure(p);
         }
     }
 
@@ -50,20 +50,33 @@ public class ToolBase implements Tool, Runnable {
         // initialize the tool
         logger = CommonLogger.getLogger(this.getClass());
         try {
-            initialize();
+            Object phase = beginPhase("initialize");
+            try {
+                initialize();
+            } finally {
+                endPhase(phase);
+            }
 
             // make sure to run terminate on exit
             Thread terminateThread = new Thread(() -> {
+                Object terminating = beginPhase("terminate");
                 try {
                     terminate();
                 } catch (Exception e) {
                     logger.error(e);
+                } finally {
+                    endPhase(terminating);
                 }
             });
             Runtime.getRuntime().addShutdownHook(terminateThread);
 
             // run the tool
-            execute();
+            phase = beginPhase("execute");
+            try {
+                execute();
+            } finally {
+                endPhase(phase);
+            }
         } catch (Exception e) {
             logger.error(e);
         }
@@ -74,25 +87,53 @@ public class ToolBase implements Tool, Runnable {
      * line options.
      */
     public void run(String... args) {
+        // exit only once the phase's event is committed
+        int status = 0;
+        Object phase = beginPhase("construct");
         try {
             this.construct();
         } catch (Exception e) {
             logger.error(e);
-            System.exit(2);
+            status = 2;
+        } finally {
+            endPhase(phase);
+        }
+        if (status != 0) {
+            System.exit(status);
         }
         // set the properties
+        phase = beginPhase("parse");
         try {
             ReflectiveCommandLineParser parser = new ReflectiveCommandLineParser();
             parser.parse(this, args, 0);
         } catch (Exception e) {
             showError("error: {0}", e.getLocalizedMessage());
             showHelp();
-            System.exit(1);
+            status = 1;
+        } finally {
+            endPhase(phase);
+        }
+        if (status != 0) {
+            System.exit(status);
         }
         // continue
         run();
     }
 
+    /**
+     * Begin a JFR event spanning the named phase of the tool, if JFR is
+     * available and recording it. See {@link ToolPhaseEvent}.
+     */
+    private Object beginPhase(String phase) {
+        return JfrEvents.isAvailable() ? ToolPhaseEvent.begin(getClass(), phase) : null;
+    }
+
+    private static void endPhase(Object phase) {
+        if (phase != null) {
+            ToolPhaseEvent.commit(phase);
+        }
+    }
+
     protected void showError(String message, Object... args) {
         System.err.println(SimpleMessageFormat.format(message, args));
     }
@@ -0,0 +1,46 @@
+package com.andrewgilmartin.common.cli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder event spanning one phase of a {@link ToolBase}:
+ * construct, parse, initialize, execute or terminate. Only used by ToolBase
+ * where JFR is available.
+ */
+@Name("com.andrewgilmartin.common.cli.ToolPhase")
+@Label("Tool Phase")
+@Category("CommonLogger")
+@Description("A phase of a ToolBase tool")
+@StackTrace(false)
+final class ToolPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Tool")
+    Class<?> tool;
+
+    @Label("Phase")
+    String phase;
+
+    /**
+     * Returns a begun event, or null if no recording wants it.
+     */
+    static Object begin(Class<?> tool, String phase) {
+        ToolPhaseEvent event = new ToolPhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.tool = tool;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object begun) {
+        ((ToolPhaseEvent) begun).commit();
+    }
+}
+
+// END
@@ -1,8 +1,11 @@
 package com.andrewgilmartin.common.exceptions;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
+
 public class CommonException extends Exception {
     
     protected Object[] parameters;
+    private transient FormattedMessage localizedMessage;
 
     protected CommonException( Throwable cause, String message, Object ... parameters ) {
         super( message, cause );
@@ -22,9 +25,27 @@ public class CommonException extends Exception {
         super();
     }
 
+    protected CommonException( Throwable cause, FormattedMessage message ) {
+        super( message.getPattern(), cause );
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
+    protected CommonException( FormattedMessage message ) {
+        super( message.getPattern() );
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
     @Override
     public String getLocalizedMessage() {
-        return ExceptionUtils.getLocalizedMessage(getMessage(), parameters);
+        if (localizedMessage == null) {
+            localizedMessage = ExceptionUtils.getFormattedMessage(getMessage(), parameters);
+            if (localizedMessage == null) {
+                return getMessage();
+            }
+        }
+        return localizedMessage.toString();
     }
  }
 
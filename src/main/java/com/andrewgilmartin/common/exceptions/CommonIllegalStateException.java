@@ -1,8 +1,11 @@
 package com.andrewgilmartin.common.exceptions;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
+
 public class CommonIllegalStateException extends IllegalStateException {
 
     protected Object[] parameters;
+    private transient FormattedMessage localizedMessage;
 
     public CommonIllegalStateException(Throwable cause, String message, Object... parameters) {
         super(message, cause);
@@ -18,9 +21,27 @@ public class CommonIllegalStateException extends IllegalStateException {
         this.parameters = parameters;
     }
 
+    public CommonIllegalStateException(Throwable cause, FormattedMessage message) {
+        super(message.getPattern(), cause);
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
+    public CommonIllegalStateException(FormattedMessage message) {
+        super(message.getPattern());
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
     @Override
     public String getLocalizedMessage() {
-        return ExceptionUtils.getLocalizedMessage(getMessage(), parameters);
+        if (localizedMessage == null) {
+            localizedMessage = ExceptionUtils.getFormattedMessage(getMessage(), parameters);
+            if (localizedMessage == null) {
+                return getMessage();
+            }
+        }
+        return localizedMessage.toString();
     }
 }
 
@@ -1,8 +1,11 @@
 package com.andrewgilmartin.common.exceptions;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
+
 public class CommonRuntimeException extends RuntimeException {
 
     protected Object[] parameters;
+    private transient FormattedMessage localizedMessage;
 
     protected CommonRuntimeException(Throwable cause, String message, Object... parameters) {
         super(message, cause);
@@ -18,8 +21,26 @@ public class CommonRuntimeException extends RuntimeException {
         super(cause);
     }
 
+    protected CommonRuntimeException(Throwable cause, FormattedMessage message) {
+        super(message.getPattern(), cause);
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
+    protected CommonRuntimeException(FormattedMessage message) {
+        super(message.getPattern());
+        this.parameters = message.getArguments();
+        this.localizedMessage = message;
+    }
+
     @Override
     public String getLocalizedMessage() {
-        return ExceptionUtils.getLocalizedMessage(getMessage(), parameters);
+        if (localizedMessage == null) {
+            localizedMessage = ExceptionUtils.getFormattedMessage(getMessage(), parameters);
+            if (localizedMessage == null) {
+                return getMessage();
+            }
+        }
+        return localizedMessage.toString();
     }
 }
@@ -1,5 +1,6 @@
 package com.andrewgilmartin.common.exceptions;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
 import com.andrewgilmartin.common.text.SimpleMessageFormat;
 
 public class ExceptionUtils {
@@ -20,6 +21,18 @@ public class ExceptionUtils {
         return template;
     }
 
+    /**
+     * Returns a message that will be formatted, using the message template and
+     * parameters, only when first used. Returns null when there is nothing to
+     * format, ie, the template is itself the message.
+     */
+    public static FormattedMessage getFormattedMessage(String template, Object... parameters) {
+        if (template != null && parameters != null && parameters.length > 0) {
+            return new FormattedMessage(template, parameters);
+        }
+        return null;
+    }
+
     public static boolean hasCause(Throwable t, Class<? extends Throwable> cause) {
         for (Throwable c = t.getCause(); c != null; c = c.getCause()) {
             if (cause.isAssignableFrom(c.getClass())) {
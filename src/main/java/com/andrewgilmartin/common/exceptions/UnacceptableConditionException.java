@@ -1,5 +1,7 @@
 package com.andrewgilmartin.common.exceptions;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
+
 public class UnacceptableConditionException extends CommonIllegalStateException {
 
     public UnacceptableConditionException(Throwable cause, String message, Object... parameters) {
@@ -13,6 +15,14 @@ public class UnacceptableConditionException extends CommonIllegalStateException
     public UnacceptableConditionException(String message, Object... parameters) {
         super(message, parameters);
     }
+
+    public UnacceptableConditionException(Throwable cause, FormattedMessage message) {
+        super(cause, message);
+    }
+
+    public UnacceptableConditionException(FormattedMessage message) {
+        super(message);
+    }
 }
 
 // END
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.andrewgilmartin.common.text;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Renders at most a given number of characters of a value for
+ * {@link SimpleMessageFormat}. Character sequences, and collections and maps
+ * that use the standard AbstractCollection and AbstractMap toString(), are
+ * rendered incrementally and so a huge value is never materialized just to be
+ * cut short. Other values are rendered in full and then cut.
+ */
+final class BoundedRenderer {
+
+    // constants
+    private static final ClassValue<Boolean> STANDARD_TO_STRING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                Class<?> declarer = type.getMethod("toString").getDeclaringClass();
+                return declarer == AbstractCollection.class || declarer == AbstractMap.class;
+            }
+            catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private BoundedRenderer() {
+        // empty
+    }
+
+    /**
+     * Append at most limit characters of the value rendered by its
+     * {@link TypeFormatter}. Returns false when the rendering was cut short.
+     */
+    static boolean appendFormatted(StringBuilder text, Object value, int limit) {
+        TypeFormatter<Object> formatter = TypeFormatters.get(value.getClass());
+        if (formatter == TypeFormatters.OBJECT_FORMATTER) {
+            return appendToString(text, value, limit);
+        }
+        int start = text.length();
+        formatter.format(text, value);
+        return truncate(text, start, limit);
+    }
+
+    /**
+     * Append at most limit characters of the value's toString(). Returns false
+     * when the rendering was cut short.
+     */
+    static boolean appendToString(StringBuilder text, Object value, int limit) {
+        int start = text.length();
+        // render one more character than the limit to know if there is more
+        int stop = limit >= Integer.MAX_VALUE - start ? Integer.MAX_VALUE : start + limit + 1;
+        append(text, value, stop);
+        return truncate(text, start, limit);
+    }
+
+    private static boolean truncate(StringBuilder text, int start, int limit) {
+        if (text.length() - start > limit) {
+            text.setLength(start + limit);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Append the value's toString() until the text's length reaches stop.
+     * Returns false when stop was reached.
+     */
+    private static boolean append(StringBuilder text, Object value, int stop) {
+        if (value == null) {
+            return append(text, "null", stop);
+        }
+        if (value instanceof CharSequence) {
+            return append(text, (CharSequence) value, stop);
+        }
+        if (value instanceof Collection && STANDARD_TO_STRING.get(value.getClass())) {
+            if (!append(text, "[", stop)) {
+                return false;
+            }
+            boolean first = true;
+            for (Object e : (Collection<?>) value) {
+                if (!first && !append(text, ", ", stop)) {
+                    return false;
+                }
+                first = false;
+                if (!(e == value ? append(text, "(this Collection)", stop) : append(text, e, stop))) {
+                    return false;
+                }
+            }
+            return append(text, "]", stop);
+        }
+        if (value instanceof Map && STANDARD_TO_STRING.get(value.getClass())) {
+            if (!append(text, "{", stop)) {
+                return false;
+            }
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (!first && !append(text, ", ", stop)) {
+                    return false;
+                }
+                first = false;
+                if (!(e.getKey() == value ? append(text, "(this Map)", stop) : append(text, e.getKey(), stop))
+                    || !append(text, "=", stop)
+                    || !(e.getValue() == value ? append(text, "(this Map)", stop) : append(text, e.getValue(), stop))) {
+                    return false;
+                }
+            }
+            return append(text, "}", stop);
+        }
+        return append(text, value.toString(), stop);
+    }
+
+    private static boolean append(StringBuilder text, CharSequence value, int stop) {
+        int room = stop - text.length();
+        if (value.length() < room) {
+            text.append(value);
+            return true;
+        }
+        text.append(value, 0, room);
+        return false;
+    }
+}
+
+// END
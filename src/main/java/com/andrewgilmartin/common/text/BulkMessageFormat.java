@@ -0,0 +1,136 @@
+package com.andrewgilmartin.common.text;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Formats many rows of arguments with one {@link SimpleMessageFormat}, each
+ * row followed by the row separator, into one StringBuilder or Appendable. For
+ * example, to write a report
+ *
+ * <pre>
+ * BulkMessageFormat report = new BulkMessageFormat(SimpleMessageFormat.getInstance("{0}\t{1}\t{2}"), "\n", 1024);
+ * report.formatTo(writer, rows.iterator(), ForkJoinPool.commonPool());
+ * </pre>
+ *
+ * When given a pool, the rows are split into chunks of the configured number
+ * of rows, the chunks are rendered in parallel, and the rendered chunks are
+ * appended in the rows' order. When formatting from an iterator only a bounded
+ * number of chunks are in flight at once and so the rows can be streamed.
+ */
+public class BulkMessageFormat {
+
+    // configured
+    private final SimpleMessageFormat format;
+    private final String rowSeparator;
+    private final int chunkRows;
+
+    public BulkMessageFormat(SimpleMessageFormat format, String rowSeparator, int chunkRows) {
+        this.format = format;
+        this.rowSeparator = rowSeparator;
+        this.chunkRows = Math.max(chunkRows, 1);
+    }
+
+    /**
+     * Append the formatted rows to the text.
+     */
+    public StringBuilder formatTo(StringBuilder text, Object[][] rows) {
+        return formatTo(text, rows, 0, rows.length);
+    }
+
+    /**
+     * Append the formatted rows to the text, rendering chunks of rows in
+     * parallel using the pool.
+     */
+    public StringBuilder formatTo(StringBuilder text, Object[][] rows, ForkJoinPool pool) {
+        if (rows.length <= chunkRows) {
+            return formatTo(text, rows);
+        }
+        List<ForkJoinTask<StringBuilder>> chunks = new ArrayList<>();
+        for (int start = 0; start < rows.length; start += chunkRows) {
+            int from = start;
+            int to = Math.min(start + chunkRows, rows.length);
+            chunks.add(pool.submit(() -> formatTo(new StringBuilder(), rows, from, to)));
+        }
+        for (ForkJoinTask<StringBuilder> chunk : chunks) {
+            text.append(chunk.join());
+        }
+        return text;
+    }
+
+    /**
+     * Append the formatted rows to the appendable.
+     */
+    public <A extends Appendable> A formatTo(A out, Iterator<Object[]> rows) throws IOException {
+        if (out instanceof StringBuilder) {
+            StringBuilder text = (StringBuilder) out;
+            while (rows.hasNext()) {
+                format.appendTo(text, rows.next()).append(rowSeparator);
+            }
+            return out;
+        }
+        SimpleMessageFormat.Scratch scratch = SimpleMessageFormat.Scratch.acquire();
+        try {
+            while (rows.hasNext()) {
+                scratch.text.setLength(0);
+                for (int i = 0; i < chunkRows && rows.hasNext(); i++) {
+                    format.appendTo(scratch.text, rows.next()).append(rowSeparator);
+                }
+                scratch.copyTo(out);
+            }
+            return out;
+        }
+        finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Append the formatted rows to the appendable, rendering chunks of rows in
+     * parallel using the pool. The rows are read on the calling thread.
+     */
+    public <A extends Appendable> A formatTo(A out, Iterator<Object[]> rows, ForkJoinPool pool) throws IOException {
+        int maxInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<StringBuilder>> inFlight = new ArrayDeque<>();
+        SimpleMessageFormat.Scratch scratch = SimpleMessageFormat.Scratch.acquire();
+        try {
+            while (rows.hasNext()) {
+                Object[][] chunk = new Object[chunkRows][];
+                int count = 0;
+                while (count < chunkRows && rows.hasNext()) {
+                    chunk[count++] = rows.next();
+                }
+                int to = count;
+                inFlight.add(pool.submit(() -> formatTo(new StringBuilder(), chunk, 0, to)));
+                if (inFlight.size() >= maxInFlight) {
+                    scratch.copyTo(inFlight.remove().join(), out);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                scratch.copyTo(inFlight.remove().join(), out);
+            }
+            return out;
+        }
+        finally {
+            for (ForkJoinTask<StringBuilder> chunk : inFlight) {
+                chunk.cancel(false);
+            }
+            scratch.release();
+        }
+    }
+
+    private StringBuilder formatTo(StringBuilder text, Object[][] rows, int from, int to) {
+        for (int i = from; i < to; i++) {
+            format.appendTo(text, rows[i]).append(rowSeparator);
+        }
+        return text;
+    }
+}
+
+// END
@@ -0,0 +1,226 @@
+package com.andrewgilmartin.common.text;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Renders dates for {@link SimpleMessageFormat}. The default date
+ * ("yyyy-MM-dd") and timestamp ("yyyy-MM-dd HH:mm:ss.SSSZ") forms are written
+ * digit by digit. User supplied styles are compiled once into a
+ * {@link DateTimeFormatter} when the style only uses pattern letters that mean
+ * the same to DateTimeFormatter as they do to {@link SimpleDateFormat}, and
+ * otherwise into a per-thread SimpleDateFormat.
+ *
+ * The default time zone is captured when this class is loaded.
+ */
+final class DateRenderer {
+
+    // constants
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+    private static final ZoneId ZONE_ID = TIME_ZONE.toZoneId();
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ"));
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // configured
+    private final DateTimeFormatter formatter;
+    private final ThreadLocal<SimpleDateFormat> format;
+
+    /**
+     * Compile the given SimpleDateFormat style.
+     */
+    DateRenderer(String style) {
+        DateTimeFormatter formatter = null;
+        if (isPortable(style)) {
+            try {
+                formatter = DateTimeFormatter.ofPattern(style).withZone(ZONE_ID);
+            }
+            catch (IllegalArgumentException e) {
+                // use SimpleDateFormat
+            }
+        }
+        if (formatter == null) {
+            // check the style now rather than when first used
+            new SimpleDateFormat(style);
+            this.format = ThreadLocal.withInitial(() -> new SimpleDateFormat(style));
+        }
+        else {
+            this.format = null;
+        }
+        this.formatter = formatter;
+    }
+
+    /**
+     * Append the value, a Date, a Number of milliseconds, or (only when the
+     * style is portable) a java.time value, using the compiled style.
+     */
+    StringBuilder append(StringBuilder text, Object value) {
+        if (formatter != null) {
+            if (value instanceof Date) {
+                formatter.formatTo(Instant.ofEpochMilli(((Date) value).getTime()), text);
+                return text;
+            }
+            if (value instanceof Number) {
+                formatter.formatTo(Instant.ofEpochMilli(((Number) value).longValue()), text);
+                return text;
+            }
+            if (value instanceof TemporalAccessor) {
+                formatter.formatTo((TemporalAccessor) value, text);
+                return text;
+            }
+            // let SimpleDateFormat report the unsupported value
+            return text.append(new SimpleDateFormat().format(value));
+        }
+        return text.append(format.get().format(value));
+    }
+
+    /**
+     * Append the date as "yyyy-MM-dd".
+     */
+    static StringBuilder appendDate(StringBuilder text, Date value) {
+        long millis = value.getTime();
+        long local = millis + TIME_ZONE.getOffset(millis);
+        long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+        if (!appendCivilDate(text, epochDay)) {
+            text.append(DATE_FORMAT.get().format(value));
+        }
+        return text;
+    }
+
+    /**
+     * Append the date as "yyyy-MM-dd HH:mm:ss.SSSZ".
+     */
+    static StringBuilder appendTimestamp(StringBuilder text, Date value) {
+        long millis = value.getTime();
+        int offset = TIME_ZONE.getOffset(millis);
+        long local = millis + offset;
+        long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+        if (!appendCivilDate(text, epochDay)) {
+            return text.append(TIMESTAMP_FORMAT.get().format(value));
+        }
+        text.append(' ');
+        appendPadded(text, millisOfDay / 3600000, 2);
+        text.append(':');
+        appendPadded(text, millisOfDay / 60000 % 60, 2);
+        text.append(':');
+        appendPadded(text, millisOfDay / 1000 % 60, 2);
+        text.append('.');
+        appendPadded(text, millisOfDay % 1000, 3);
+        int offsetMinutes = offset / 60000;
+        if (offsetMinutes < 0) {
+            text.append('-');
+            offsetMinutes = -offsetMinutes;
+        }
+        else {
+            text.append('+');
+        }
+        appendPadded(text, offsetMinutes / 60, 2);
+        appendPadded(text, offsetMinutes % 60, 2);
+        return text;
+    }
+
+    /**
+     * Append the proleptic Gregorian date of the given epoch day. Returns false
+     * and appends nothing when the year is outside of 1583 to 9999 where
+     * SimpleDateFormat's Julian calendar or year padding rules differ.
+     */
+    private static boolean appendCivilDate(StringBuilder text, long epochDay) {
+        // see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 1583 || year > 9999) {
+            return false;
+        }
+        appendPadded(text, (int) year, 4);
+        text.append('-');
+        appendPadded(text, month, 2);
+        text.append('-');
+        appendPadded(text, day, 2);
+        return true;
+    }
+
+    private static void appendPadded(StringBuilder text, int value, int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                text.append('0');
+            }
+        }
+        text.append(value);
+    }
+
+    /**
+     * Is the SimpleDateFormat style formatted identically by
+     * DateTimeFormatter?
+     */
+    private static boolean isPortable(String style) {
+        int length = style.length();
+        for (int i = 0; i < length;) {
+            char c = style.charAt(i);
+            if (c == '\'') {
+                int close = style.indexOf('\'', i + 1);
+                if (close < 0) {
+                    return false;
+                }
+                i = close + 1;
+            }
+            else if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
+                int count = 1;
+                while (i + count < length && style.charAt(i + count) == c) {
+                    count += 1;
+                }
+                if (!isPortable(c, count)) {
+                    return false;
+                }
+                i += count;
+            }
+            else if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+                // reserved by DateTimeFormatter
+                return false;
+            }
+            else {
+                i += 1;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPortable(char letter, int count) {
+        switch (letter) {
+            case 'y':
+            case 'M':
+            case 'E':
+                return count <= 4;
+            case 'd':
+            case 'H':
+            case 'h':
+            case 'k':
+            case 'K':
+            case 'm':
+            case 's':
+                return count <= 2;
+            case 'D':
+            case 'Z':
+                return count <= 3;
+            case 'S':
+                return count == 3;
+            case 'a':
+                return count == 1;
+            default:
+                return false;
+        }
+    }
+}
+
+// END
@@ -0,0 +1,94 @@
+package com.andrewgilmartin.common.text;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * A message pattern and a snapshot of its arguments that is formatted, using
+ * {@link SimpleMessageFormat}, only when the message is first used. The
+ * formatted text is remembered and so later uses cost nothing. If the pattern
+ * is misformed then the message is the pattern itself.
+ *
+ * Only the argument array is copied. Mutable arguments changed before the
+ * message is first used will be formatted with their changed values.
+ */
+public final class FormattedMessage {
+
+    // configured
+    private final String pattern;
+    private final Object[] arguments;
+    // formatted
+    private volatile String text;
+
+    public FormattedMessage(String pattern, Object... arguments) {
+        this.pattern = pattern;
+        this.arguments = arguments != null ? arguments.clone() : null;
+    }
+
+    /**
+     * Returns the unformatted pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns a copy of the arguments.
+     */
+    public Object[] getArguments() {
+        return arguments != null ? arguments.clone() : null;
+    }
+
+    /**
+     * Has the message been formatted yet?
+     */
+    public boolean isFormatted() {
+        return text != null;
+    }
+
+    /**
+     * Append the message to the text. If the message has not yet been
+     * formatted then it is formatted directly into the text and is not
+     * remembered.
+     */
+    public StringBuilder formatTo(StringBuilder text) {
+        String t = this.text;
+        if (t != null) {
+            return text.append(t);
+        }
+        if (pattern == null) {
+            return text.append("null");
+        }
+        int length = text.length();
+        try {
+            return SimpleMessageFormat.formatTo(text, pattern, arguments);
+        }
+        catch (IllegalArgumentException e) {
+            text.setLength(length);
+            LogLog.error("unable to format message: pattern=" + pattern, e);
+            return text.append(pattern);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String t = text;
+        if (t == null) {
+            if (pattern == null) {
+                t = "null";
+            }
+            else {
+                try {
+                    t = SimpleMessageFormat.format(pattern, arguments);
+                }
+                catch (IllegalArgumentException e) {
+                    LogLog.error("unable to format message: pattern=" + pattern, e);
+                    t = pattern;
+                }
+            }
+            text = t;
+        }
+        return t;
+    }
+}
+
+// END
@@ -0,0 +1,329 @@
+package com.andrewgilmartin.common.text;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encodes values as JSON directly into a StringBuilder. Maps are encoded as
+ * objects, iterables and arrays as arrays, numbers and booleans as themselves,
+ * and dates as strings. Other objects are encoded as objects of their public
+ * getter methods and public fields, or, when they have none, as the string of
+ * their toString().
+ *
+ * The getters and fields of each class are found once and kept as
+ * MethodHandles. Cycles are encoded as the string "[cycle]". Containers deeper
+ * than the maximum depth are encoded as the string "[...]". Containers with
+ * more than the maximum number of elements are truncated and end with a final
+ * "[...]" element, or, for maps, a final "[...]" member. A getter that
+ * throws an exception is encoded as the string "[error: " followed by the
+ * exception and "]"; errors are not caught.
+ */
+public class JsonEncoder {
+
+    // constants
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final Property[] NO_PROPERTIES = new Property[0];
+    private static final ClassValue<Property[]> PROPERTIES = new ClassValue<Property[]>() {
+        @Override
+        protected Property[] computeValue(Class<?> type) {
+            return findProperties(type);
+        }
+    };
+    // configured
+    private final int maxDepth;
+    private final int maxElements;
+
+    public JsonEncoder(int maxDepth, int maxElements) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+    }
+
+    /**
+     * Append the JSON encoding of the value to the text.
+     */
+    public StringBuilder encode(StringBuilder text, Object value) {
+        encode(text, value, null, 0);
+        return text;
+    }
+
+    /**
+     * Append the value. The path holds the containers currently being
+     * encoded, and depth is the number of them.
+     */
+    private Object[] encode(StringBuilder text, Object value, Object[] path, int depth) {
+        if (value == null) {
+            text.append("null");
+        }
+        else if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+            encodeString(text, value.toString());
+        }
+        else if (value instanceof Boolean) {
+            text.append(((Boolean) value).booleanValue());
+        }
+        else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            text.append(((Number) value).longValue());
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                text.append("null");
+            }
+            else {
+                text.append(d);
+            }
+        }
+        else if (value instanceof Number) {
+            text.append(value.toString());
+        }
+        else if (value instanceof Date) {
+            text.append('"');
+            DateRenderer.appendTimestamp(text, (Date) value);
+            text.append('"');
+        }
+        else {
+            boolean isMap = value instanceof Map;
+            boolean isIterable = value instanceof Iterable;
+            boolean isArray = value.getClass().isArray();
+            Property[] properties = isMap || isIterable || isArray ? NO_PROPERTIES : PROPERTIES.get(value.getClass());
+            if (!isMap && !isIterable && !isArray && properties.length == 0) {
+                encodeString(text, value.toString());
+            }
+            else if (depth >= maxDepth) {
+                text.append("\"[...]\"");
+            }
+            else {
+                for (int i = 0; i < depth; i++) {
+                    if (path[i] == value) {
+                        text.append("\"[cycle]\"");
+                        return path;
+                    }
+                }
+                if (path == null) {
+                    path = new Object[maxDepth];
+                }
+                path[depth] = value;
+                if (isMap) {
+                    path = encodeMap(text, (Map<?, ?>) value, path, depth + 1);
+                }
+                else if (isIterable) {
+                    path = encodeIterable(text, ((Iterable<?>) value).iterator(), path, depth + 1);
+                }
+                else if (isArray) {
+                    path = encodeArray(text, value, path, depth + 1);
+                }
+                else {
+                    path = encodeBean(text, value, properties, path, depth + 1);
+                }
+                path[depth] = null;
+            }
+        }
+        return path;
+    }
+
+    private Object[] encodeMap(StringBuilder text, Map<?, ?> map, Object[] path, int depth) {
+        text.append('{');
+        int count = 0;
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            if (count > 0) {
+                text.append(',');
+            }
+            if (count++ == maxElements) {
+                text.append("\"[...]\":null");
+                break;
+            }
+            encodeString(text, String.valueOf(e.getKey()));
+            text.append(':');
+            path = encode(text, e.getValue(), path, depth);
+        }
+        text.append('}');
+        return path;
+    }
+
+    private Object[] encodeIterable(StringBuilder text, Iterator<?> values, Object[] path, int depth) {
+        text.append('[');
+        for (int count = 0; values.hasNext(); count++) {
+            if (count > 0) {
+                text.append(',');
+            }
+            if (count == maxElements) {
+                text.append("\"[...]\"");
+                break;
+            }
+            path = encode(text, values.next(), path, depth);
+        }
+        text.append(']');
+        return path;
+    }
+
+    private Object[] encodeArray(StringBuilder text, Object array, Object[] path, int depth) {
+        text.append('[');
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            if (i == maxElements) {
+                text.append("\"[...]\"");
+                break;
+            }
+            path = encode(text, Array.get(array, i), path, depth);
+        }
+        text.append(']');
+        return path;
+    }
+
+    private Object[] encodeBean(StringBuilder text, Object bean, Property[] properties, Object[] path, int depth) {
+        text.append('{');
+        for (int i = 0; i < properties.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            Property property = properties[i];
+            text.append(property.prefix);
+            Object value;
+            try {
+                value = (Object) property.getter.invokeExact(bean);
+            }
+            catch (Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                encodeString(text, "[error: " + e + "]");
+                continue;
+            }
+            path = encode(text, value, path, depth);
+        }
+        text.append('}');
+        return path;
+    }
+
+    /**
+     * Append the string as a quoted and escaped JSON string.
+     */
+    public static StringBuilder encodeString(StringBuilder text, CharSequence value) {
+        text.append('"');
+        for (int length = value.length(), i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    text.append("\\\"");
+                    break;
+                case '\\':
+                    text.append("\\\\");
+                    break;
+                case '\n':
+                    text.append("\\n");
+                    break;
+                case '\r':
+                    text.append("\\r");
+                    break;
+                case '\t':
+                    text.append("\\t");
+                    break;
+                case '\b':
+                    text.append("\\b");
+                    break;
+                case '\f':
+                    text.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        text.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+                    }
+                    else {
+                        text.append(c);
+                    }
+            }
+        }
+        text.append('"');
+        return text;
+    }
+
+    /**
+     * Find the public getters and public fields of the class, ordered by name.
+     * Members that can not be accessed are ignored.
+     */
+    private static Property[] findProperties(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, MethodHandle> getters = new TreeMap<>();
+        for (Field field : type.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                try {
+                    field.setAccessible(true);
+                    getters.put(field.getName(), lookup.unreflectGetter(field));
+                }
+                catch (RuntimeException | IllegalAccessException e) {
+                    // ignore inaccessible field
+                }
+            }
+        }
+        for (Method method : type.getMethods()) {
+            String name = getPropertyName(method);
+            if (name != null) {
+                try {
+                    method.setAccessible(true);
+                    getters.put(name, lookup.unreflect(method));
+                }
+                catch (RuntimeException | IllegalAccessException e) {
+                    // ignore inaccessible method
+                }
+            }
+        }
+        if (getters.isEmpty()) {
+            return NO_PROPERTIES;
+        }
+        Property[] properties = new Property[getters.size()];
+        int i = 0;
+        for (Map.Entry<String, MethodHandle> e : getters.entrySet()) {
+            properties[i++] = new Property(e.getKey(), e.getValue().asType(GETTER_TYPE));
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the property name of the getter method, eg "fooBar" for
+     * "getFooBar()" or "isFooBar()", or null when the method is not a getter.
+     */
+    private static String getPropertyName(Method method) {
+        if (Modifier.isStatic(method.getModifiers())
+            || method.getParameterCount() != 0
+            || method.getReturnType() == void.class
+            || method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        String name = method.getName();
+        int prefix
+            = name.startsWith("get") ? 3
+                : name.startsWith("is") && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class) ? 2
+                    : 0;
+        if (prefix == 0 || name.length() == prefix) {
+            return null;
+        }
+        return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+    }
+
+    /**
+     * A getter and its JSON object member prefix, ie the quoted name and colon.
+     */
+    private static final class Property {
+
+        private final String prefix;
+        private final MethodHandle getter;
+
+        Property(String name, MethodHandle getter) {
+            this.prefix = encodeString(new StringBuilder(), name).append(':').toString();
+            this.getter = getter;
+        }
+    }
+}
+
+// END
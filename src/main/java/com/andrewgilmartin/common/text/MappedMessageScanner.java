@@ -0,0 +1,188 @@
+package com.andrewgilmartin.common.text;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Scans a UTF-8 file of lines, eg a log file, for those matching a
+ * {@link MessageExtractor} and gives the arguments of each matching line to a
+ * handler. The file is memory-mapped and matched as bytes; only the arguments
+ * of matching lines are decoded. For example, to count failed requests
+ *
+ * <pre>
+ * MessageExtractor extractor = SimpleMessageFormat.getInstance("request failed: id={0} status={1}").extractor();
+ * LongAdder failures = new LongAdder();
+ * new MappedMessageScanner(extractor, 64 * 1024 * 1024).scan(path, ForkJoinPool.commonPool(), arguments -&gt; failures.increment());
+ * </pre>
+ *
+ * When given a pool, the file is split into chunks of about the configured
+ * size, each ending at a line end, and the chunks are scanned in parallel. The
+ * handler is then called from several threads at once and not in the lines'
+ * order. Lines end with "\n" or "\r\n".
+ */
+public class MappedMessageScanner {
+
+    // constants
+    private static final int BOUNDARY_BUFFER_SIZE = 8 * 1024;
+    // configured
+    private final MessageExtractor extractor;
+    private final int chunkSize;
+
+    public MappedMessageScanner(MessageExtractor extractor, int chunkSize) {
+        this.extractor = extractor;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Scan the file on the calling thread. Returns the number of matching lines.
+     */
+    public long scan(Path file, Consumer<String[]> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long count = 0;
+            long[] boundaries = boundaries(channel);
+            for (int i = 1; i < boundaries.length; i++) {
+                count += scan(channel, boundaries[i - 1], boundaries[i], handler);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Scan the file's chunks in parallel using the pool. The handler must be
+     * thread-safe. Returns the number of matching lines.
+     */
+    public long scan(Path file, ForkJoinPool pool, Consumer<String[]> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = boundaries(channel);
+            List<ForkJoinTask<Long>> chunks = new ArrayList<>();
+            for (int i = 1; i < boundaries.length; i++) {
+                long start = boundaries[i - 1];
+                long end = boundaries[i];
+                chunks.add(pool.submit(() -> {
+                    try {
+                        return scan(channel, start, end, handler);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            long count = 0;
+            for (ForkJoinTask<Long> chunk : chunks) {
+                try {
+                    count += chunk.join();
+                }
+                catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the chunk boundaries, ie, the file's start, the position after
+     * the first line end at or after each multiple of the chunk size, and the
+     * file's end.
+     */
+    private long[] boundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_BUFFER_SIZE);
+        long position = chunkSize;
+        while (position < size) {
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < size) {
+                ((Buffer) buffer).clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = position + i + 1;
+                        break;
+                    }
+                }
+                if (lineEnd < 0) {
+                    position += read;
+                }
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            boundaries.add(lineEnd);
+            position = lineEnd + chunkSize;
+        }
+        boundaries.add(size);
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Scan the lines from start to end, a region that begins at a line start
+     * and no larger than Integer.MAX_VALUE bytes.
+     */
+    private long scan(FileChannel channel, long start, long end, Consumer<String[]> handler) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("line too long to scan: position=" + start);
+        }
+        if (end <= start) {
+            return 0;
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ByteBuffer view = mapped.duplicate();
+        int[] bounds = new int[extractor.getSlotCount() * 2];
+        long count = 0;
+        int limit = mapped.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && mapped.get(lineEnd) != '\n') {
+                lineEnd += 1;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && mapped.get(lineEnd - 1) == '\r') {
+                lineEnd -= 1;
+            }
+            if (extractor.match(mapped, lineStart, lineEnd, bounds)) {
+                handler.accept(arguments(view, bounds));
+                count += 1;
+            }
+            lineStart = next;
+        }
+        return count;
+    }
+
+    private String[] arguments(ByteBuffer view, int[] bounds) {
+        String[] arguments = new String[extractor.getArgumentCount()];
+        for (int slot = 0; slot < extractor.getSlotCount(); slot++) {
+            int start = bounds[2 * slot];
+            int end = bounds[2 * slot + 1];
+            byte[] bytes = new byte[end - start];
+            ((Buffer) view).clear();
+            ((Buffer) view).position(start);
+            view.get(bytes);
+            arguments[extractor.getArgumentIndex(slot)] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return arguments;
+    }
+}
+
+// END
@@ -0,0 +1,233 @@
+package com.andrewgilmartin.common.text;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recovers the argument text from a message formatted with a
+ * {@link SimpleMessageFormat} pattern, for example, to pull fields out of log
+ * lines. The pattern's literal text is matched exactly and each argument is
+ * everything between its surrounding literals. An argument is ended by the
+ * first occurrence of the literal that follows it, except for the last
+ * argument which extends to the literal that ends the message. Patterns with
+ * adjacent arguments, eg "{0}{1}", can not be extracted.
+ *
+ * The message is matched at the end of the text, so a line with a prefix,
+ * such as a layout's date, level and logger, still matches. The message
+ * starts at the first occurrence of the pattern's leading literal from which
+ * the rest matches. A pattern that starts with an argument has no leading
+ * literal and so that argument includes the prefix.
+ *
+ * Messages can be matched as characters or, without decoding, as UTF-8 bytes.
+ * Matching does not allocate. Create with {@link SimpleMessageFormat#extractor()}.
+ */
+public class MessageExtractor {
+
+    // configured
+    private final String pattern;
+    private final String[] literals; // literals[i] precedes slot i and literals[slots] ends the message
+    private final byte[][] literalBytes;
+    private final int[] argumentIndexes; // the argument index of each slot
+    private final int argumentCount;
+
+    MessageExtractor(String pattern, String[] literals, int[] argumentIndexes) {
+        for (int i = 1; i < argumentIndexes.length; i++) {
+            if (literals[i].isEmpty()) {
+                throw new IllegalArgumentException("adjacent arguments can not be extracted: pattern=" + pattern);
+            }
+        }
+        this.pattern = pattern;
+        this.literals = literals;
+        this.literalBytes = new byte[literals.length][];
+        for (int i = 0; i < literals.length; i++) {
+            literalBytes[i] = literals[i].getBytes(StandardCharsets.UTF_8);
+        }
+        this.argumentIndexes = argumentIndexes;
+        int count = 0;
+        for (int index : argumentIndexes) {
+            count = Math.max(count, index + 1);
+        }
+        this.argumentCount = count;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the number of argument slots in the pattern. An argument used
+     * twice, eg "{0} {0}", has two slots.
+     */
+    public int getSlotCount() {
+        return argumentIndexes.length;
+    }
+
+    /**
+     * Returns the argument index of the given slot.
+     */
+    public int getArgumentIndex(int slot) {
+        return argumentIndexes[slot];
+    }
+
+    /**
+     * Returns the number of arguments, ie, one more than the highest argument
+     * index.
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Returns the arguments of the message, indexed by argument index, or null
+     * when the message does not match. Unused argument indexes are null.
+     */
+    public String[] extract(CharSequence message) {
+        int[] bounds = new int[argumentIndexes.length * 2];
+        if (!match(message, 0, message.length(), bounds)) {
+            return null;
+        }
+        String[] arguments = new String[argumentCount];
+        for (int i = 0; i < argumentIndexes.length; i++) {
+            arguments[argumentIndexes[i]] = message.subSequence(bounds[2 * i], bounds[2 * i + 1]).toString();
+        }
+        return arguments;
+    }
+
+    /**
+     * Match the characters from start to end, the message being a suffix of
+     * them. When they match the start and end of each slot's argument is put
+     * in bounds at 2*slot and 2*slot+1.
+     */
+    public boolean match(CharSequence text, int start, int end, int[] bounds) {
+        String first = literals[0];
+        if (first.isEmpty()) {
+            return matchFrom(text, start, end, bounds);
+        }
+        for (int i = indexOf(text, start, end, first); i >= 0; i = indexOf(text, i + 1, end, first)) {
+            if (matchFrom(text, i + first.length(), end, bounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchFrom(CharSequence text, int cursor, int end, int[] bounds) {
+        int slots = argumentIndexes.length;
+        if (slots == 0) {
+            return cursor == end;
+        }
+        for (int i = 0; i < slots; i++) {
+            String next = literals[i + 1];
+            int argumentEnd;
+            if (i == slots - 1) {
+                argumentEnd = end - next.length();
+                if (argumentEnd < cursor || !regionMatches(text, argumentEnd, end, next)) {
+                    return false;
+                }
+            }
+            else {
+                argumentEnd = indexOf(text, cursor, end, next);
+                if (argumentEnd < 0) {
+                    return false;
+                }
+            }
+            bounds[2 * i] = cursor;
+            bounds[2 * i + 1] = argumentEnd;
+            cursor = argumentEnd + next.length();
+        }
+        return true;
+    }
+
+    /**
+     * Match the UTF-8 bytes from start to end, using absolute gets, the
+     * message being a suffix of them. When they match the start and end of
+     * each slot's argument is put in bounds at 2*slot and 2*slot+1.
+     */
+    public boolean match(ByteBuffer bytes, int start, int end, int[] bounds) {
+        byte[] first = literalBytes[0];
+        if (first.length == 0) {
+            return matchFrom(bytes, start, end, bounds);
+        }
+        for (int i = indexOf(bytes, start, end, first); i >= 0; i = indexOf(bytes, i + 1, end, first)) {
+            if (matchFrom(bytes, i + first.length, end, bounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchFrom(ByteBuffer bytes, int cursor, int end, int[] bounds) {
+        int slots = argumentIndexes.length;
+        if (slots == 0) {
+            return cursor == end;
+        }
+        for (int i = 0; i < slots; i++) {
+            byte[] next = literalBytes[i + 1];
+            int argumentEnd;
+            if (i == slots - 1) {
+                argumentEnd = end - next.length;
+                if (argumentEnd < cursor || !regionMatches(bytes, argumentEnd, end, next)) {
+                    return false;
+                }
+            }
+            else {
+                argumentEnd = indexOf(bytes, cursor, end, next);
+                if (argumentEnd < 0) {
+                    return false;
+                }
+            }
+            bounds[2 * i] = cursor;
+            bounds[2 * i + 1] = argumentEnd;
+            cursor = argumentEnd + next.length;
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, int end, String literal) {
+        int length = literal.length();
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, int start, int end, String literal) {
+        char first = literal.charAt(0);
+        for (int last = end - literal.length(), i = start; i <= last; i++) {
+            if (text.charAt(i) == first && regionMatches(text, i, end, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(ByteBuffer bytes, int start, int end, byte[] literal) {
+        int length = literal.length;
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(start + i) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer bytes, int start, int end, byte[] literal) {
+        byte first = literal[0];
+        for (int last = end - literal.length, i = start; i <= last; i++) {
+            if (bytes.get(i) == first && regionMatches(bytes, i, end, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
+
+// END
@@ -0,0 +1,55 @@
+package com.andrewgilmartin.common.text;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Renders floating point numbers for {@link SimpleMessageFormat} without
+ * creating objects. Values are rendered as if by {@code new
+ * DecimalFormat("#.#")}, that is, with at most one fractional digit and
+ * half-even rounding of the exact binary value. The rare values that can not be
+ * rendered exactly using double arithmetic (halfway cases, huge magnitudes, and
+ * infinities) are handed to a per-thread DecimalFormat.
+ */
+final class NumberRenderer {
+
+    // constants
+    private static final double FAST_LIMIT = 1e12; // scaled values stay well within the exact range of a double
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal.withInitial(
+        () -> new DecimalFormat("#.#", DecimalFormatSymbols.getInstance(Locale.ROOT)));
+
+    private NumberRenderer() {
+        // empty
+    }
+
+    static StringBuilder appendDecimal(StringBuilder text, double value) {
+        if (Double.isNaN(value)) {
+            return text.append("NaN");
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < FAST_LIMIT) {
+            double scaled = magnitude * 10;
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            // the multiplication is off by at most half an ulp of scaled, so only
+            // fractions that close to one half are ambiguous
+            double tolerance = scaled * 1e-15;
+            if (Math.abs(fraction - 0.5) > tolerance) {
+                long rounded = (long) (fraction > 0.5 ? floor + 1 : floor);
+                if (Double.doubleToRawLongBits(value) < 0) {
+                    text.append('-');
+                }
+                text.append(rounded / 10);
+                int digit = (int) (rounded % 10);
+                if (digit != 0) {
+                    text.append('.').append((char) ('0' + digit));
+                }
+                return text;
+            }
+        }
+        return text.append(DECIMAL_FORMAT.get().format(value));
+    }
+}
+
+// END
@@ -1,13 +1,25 @@
 package com.andrewgilmartin.common.text;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.DecimalFormat;
-import java.text.Format;
 import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.helpers.LogLog;
@@ -17,23 +29,285 @@ import org.apache.log4j.helpers.LogLog;
  * the locale for formatting but instead uses simple patterns for numbers, etc.
  * This formatter is mostly suitable for logging and other non-locale specific
  * output.
+ *
+ * The "json" type encodes the argument using {@link JsonEncoder}.
+ *
+ * Arguments without a format type are rendered by the {@link TypeFormatter}
+ * registered for their class. Integers, longs, floats, doubles, dates and
+ * timestamps are rendered without creating intermediate objects. Exceptions are
+ * rendered as stack traces by a caching {@link StackTraceRenderer}. Other
+ * values are rendered using toString() unless a formatter is registered. Number and date styles are compiled along
+ * with the pattern.
+ *
+ * The pattern is compiled once, when the instance is created, into an
+ * immutable list of literal and argument segments. Instances are thread-safe
+ * and should be reused. The static {@link #format(String, Object...)} method
+ * keeps a bounded cache of compiled patterns.
  */
 public class SimpleMessageFormat {
 
     // constants
     private static final Pattern STRING_STYLE = Pattern.compile("(\\d+)?((:|\\.\\.)(\\d+))?"); // [offset][:length] or [start][..end]
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final int CACHE_CAPACITY = 1024;
+    private static final JsonEncoder JSON_ENCODER = new JsonEncoder(16, 1000);
+    private static final ConcurrentMap<String, SimpleMessageFormat> CACHE = new ConcurrentHashMap<>();
+    // shared
+    private static volatile StackTraceRenderer stackTraceRenderer = new StackTraceRenderer(256);
+    private static volatile int maxArgumentLength = Integer.MAX_VALUE;
+
+    static {
+        registerTypeFormatter(Integer.class, (text, value) -> text.append(value.intValue()));
+        registerTypeFormatter(Long.class, (text, value) -> text.append(value.longValue()));
+        registerTypeFormatter(Float.class, (text, value) -> NumberRenderer.appendDecimal(text, value.doubleValue()));
+        registerTypeFormatter(Double.class, (text, value) -> NumberRenderer.appendDecimal(text, value.doubleValue()));
+        registerTypeFormatter(Number.class, (text, value) -> text.append(value.toString()));
+        registerTypeFormatter(Timestamp.class, DateRenderer::appendTimestamp);
+        registerTypeFormatter(Date.class, DateRenderer::appendDate);
+        registerTypeFormatter(Exception.class, (text, value) -> stackTraceRenderer.append(text, value));
+    }
+
     // configured
     private final String pattern;
+    private final Segment[] segments;
 
     public SimpleMessageFormat(String pattern) {
+        this(pattern, compile(pattern));
+    }
+
+    private SimpleMessageFormat(String pattern, Segment[] segments) {
         this.pattern = pattern;
+        this.segments = segments;
+    }
+
+    /**
+     * Returns the pattern this instance was compiled from.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns a formatter specialized for arguments of the given classes. See
+     * {@link SpecializedMessageFormat}.
+     */
+    public SpecializedMessageFormat specialize(Class<?>... argumentTypes) {
+        MethodHandle handle = null;
+        for (int i = segments.length - 1; i >= 0; i--) {
+            MethodHandle segment = segments[i].toMethodHandle(argumentTypes);
+            handle = handle == null ? segment : MethodHandles.foldArguments(handle, segment);
+        }
+        if (handle == null) {
+            handle = MethodHandles.insertArguments(Handles.APPEND_LITERAL, 1, "");
+        }
+        return new SpecializedMessageFormat(this, handle);
+    }
+
+    /**
+     * Returns an extractor that recovers the arguments from text formatted
+     * with this pattern. See {@link MessageExtractor}.
+     */
+    public MessageExtractor extractor() {
+        String[] literals = new String[segments.length + 1];
+        int[] argumentIndexes = new int[segments.length];
+        int slots = 0;
+        StringBuilder literal = new StringBuilder();
+        for (Segment segment : segments) {
+            if (segment instanceof Literal) {
+                literal.append(((Literal) segment).text);
+            }
+            else {
+                literals[slots] = literal.toString();
+                argumentIndexes[slots++] = ((Argument) segment).index;
+                literal.setLength(0);
+            }
+        }
+        literals[slots] = literal.toString();
+        return new MessageExtractor(pattern, Arrays.copyOf(literals, slots + 1), Arrays.copyOf(argumentIndexes, slots));
     }
 
     public String format(Object... values) {
-        return format(pattern, values);
+        Scratch scratch = Scratch.acquire();
+        try {
+            return appendTo(scratch.text, values).toString();
+        }
+        finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Append the formatted values to the given text. Named apart from the
+     * static {@link #formatTo(StringBuilder, String, Object...)} so that a
+     * String first value is not taken for a pattern.
+     */
+    public StringBuilder appendTo(StringBuilder text, Object... values) {
+        if (values == null) {
+            values = NO_VALUES;
+        }
+        for (Segment segment : segments) {
+            segment.format(text, values);
+        }
+        return text;
+    }
+
+    /**
+     * Append the formatted values to the given appendable. The values are
+     * rendered into a per-thread buffer and then copied to the appendable. A
+     * Writer is given the buffer's characters directly and so no intermediate
+     * string is created.
+     */
+    public <A extends Appendable> A appendTo(A out, Object... values) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendTo((StringBuilder) out, values);
+            return out;
+        }
+        Scratch scratch = Scratch.acquire();
+        try {
+            appendTo(scratch.text, values);
+            scratch.copyTo(out);
+            return out;
+        }
+        finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Append the formatted values, encoded as UTF-8, to the buffer. When the
+     * buffer is too small it is replaced by a larger one, direct if the given
+     * one is, holding a copy of the given buffer's content up to its position.
+     * Always continue with the returned buffer. Named apart from the static
+     * {@link #formatTo(ByteBuffer, String, Object...)} so that a String first
+     * value is not taken for a pattern.
+     */
+    public ByteBuffer encodeTo(ByteBuffer buffer, Object... values) {
+        if (values == null) {
+            values = NO_VALUES;
+        }
+        Scratch scratch = Scratch.acquire();
+        try {
+            for (Segment segment : segments) {
+                while (!segment.encode(buffer, values, scratch.text)) {
+                    buffer = Utf8Encoder.grow(buffer);
+                }
+            }
+            return buffer;
+        }
+        finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Append the formatted values, encoded as UTF-8, to the buffer. Returns
+     * false, leaving the buffer's position unchanged, when the buffer is too
+     * small.
+     */
+    public boolean tryEncodeTo(ByteBuffer buffer, Object... values) {
+        if (values == null) {
+            values = NO_VALUES;
+        }
+        int start = buffer.position();
+        Scratch scratch = Scratch.acquire();
+        try {
+            for (Segment segment : segments) {
+                if (!segment.encode(buffer, values, scratch.text)) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally {
+            scratch.release();
+        }
     }
 
     public static String format(String pattern, Object... values) {
+        return getInstance(pattern).format(values);
+    }
+
+    public static StringBuilder formatTo(StringBuilder text, String pattern, Object... values) {
+        return getInstance(pattern).appendTo(text, values);
+    }
+
+    public static <A extends Appendable> A formatTo(A out, String pattern, Object... values) throws IOException {
+        return getInstance(pattern).appendTo(out, values);
+    }
+
+    public static ByteBuffer formatTo(ByteBuffer buffer, String pattern, Object... values) {
+        return getInstance(pattern).encodeTo(buffer, values);
+    }
+
+    public static boolean tryFormatTo(ByteBuffer buffer, String pattern, Object... values) {
+        return getInstance(pattern).tryEncodeTo(buffer, values);
+    }
+
+    /**
+     * Returns the compiled form of the given pattern. Compiled patterns are
+     * cached. When the cache is full an arbitrary entry is evicted to make room
+     * for the new one. A misformed pattern is reported, through LogLog, once
+     * and is then cached as literal text so that it renders as itself.
+     */
+    public static SimpleMessageFormat getInstance(String pattern) {
+        SimpleMessageFormat format = CACHE.get(pattern);
+        if (format == null) {
+            try {
+                format = new SimpleMessageFormat(pattern);
+            }
+            catch (IllegalArgumentException e) {
+                LogLog.error("unable to compile message pattern: pattern=" + pattern, e);
+                format = new SimpleMessageFormat(pattern, new Segment[]{new Literal(pattern)});
+            }
+            // not LRU: a log's patterns are few and fixed, so the cache is
+            // only full when patterns are built from data, and then which
+            // entry goes matters less than not keeping an order per hit
+            if (CACHE.size() >= CACHE_CAPACITY) {
+                Iterator<String> i = CACHE.keySet().iterator();
+                if (i.hasNext()) {
+                    i.next();
+                    i.remove();
+                }
+            }
+            SimpleMessageFormat existing = CACHE.putIfAbsent(pattern, format);
+            if (existing != null) {
+                format = existing;
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Use the given formatter for arguments of the given type, its subclasses
+     * and, for an interface, its implementations, when the argument has no
+     * format type. A null formatter removes the type's formatter.
+     */
+    public static <T> void registerTypeFormatter(Class<T> type, TypeFormatter<? super T> formatter) {
+        TypeFormatters.register(type, formatter);
+    }
+
+    /**
+     * Limit the number of characters shown of any one default or string typed
+     * argument. A cut short argument is followed by "[...]". Strings,
+     * collections and maps are rendered incrementally and so are never
+     * rendered in full only to be cut. A string style's own limit applies
+     * within this limit. The default is no limit.
+     */
+    public static void setMaxArgumentLength(int length) {
+        maxArgumentLength = length > 0 ? length : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Use the given renderer for exception arguments. The default renderer
+     * renders the full stack trace, as printStackTrace() does.
+     */
+    public static void setStackTraceRenderer(StackTraceRenderer renderer) {
+        stackTraceRenderer = renderer;
+    }
+
+    private static Segment[] compile(String pattern) {
+        List<Segment> segments = new ArrayList<>();
         int state = 0;
         int length = pattern.length();
         int cursor = 0;
@@ -41,16 +315,14 @@ public class SimpleMessageFormat {
         int index = 0;
         StringBuilder type = null;
         StringBuilder style = null;
-        LOOP: 
+        LOOP:
         for (;;) {
             if (state < 0) {
-                if (values.length != 0 && index < values.length) {
-                    format(text, values[index], type, style);
-                }
-                else {
-                    // TODO this situation is really an error and so don't allow it.
-                    text.append("{").append(index).append("}");
+                if (text.length() > 0) {
+                    segments.add(new Literal(text.toString()));
+                    text.setLength(0);
                 }
+                segments.add(createArgument(index, type != null ? type.toString() : null, style != null ? style.toString() : null));
                 index = 0;
                 type = null;
                 style = null;
@@ -154,119 +426,430 @@ public class SimpleMessageFormat {
                     throw new IllegalStateException("unhandled state: state=" + state);
             }
         }
-        return text.toString();
+        if (text.length() > 0) {
+            segments.add(new Literal(text.toString()));
+        }
+        return segments.toArray(new Segment[segments.size()]);
     }
 
-    private static StringBuilder format(StringBuilder text, Object value, StringBuilder name, StringBuilder pattern) {
-        return format(text, value, name != null ? name.toString() : null, pattern != null ? pattern.toString() : null);
+    private static Segment createArgument(int index, String type, String style) {
+        if (type == null) {
+            return new DefaultArgument(index);
+        }
+        else if ("date".equals(type) || "time".equals(type)) {
+            if (style == null) {
+                throw new IllegalArgumentException("missing format style: format-type=" + type);
+            }
+            return new DateArgument(index, style);
+        }
+        else if ("number".equals(type)) {
+            if (style == null) {
+                throw new IllegalArgumentException("missing format style: format-type=" + type);
+            }
+            return new NumberArgument(index, style);
+        }
+        else if ("json".equals(type)) {
+            return new JsonArgument(index);
+        }
+        else if ("string".equals(type)) {
+            return new StringArgument(index, style);
+        }
+        else {
+            throw new IllegalArgumentException("unsupported format type: format-type=" + type);
+        }
     }
 
-    private static StringBuilder format(StringBuilder text, Object value, String type, String style) {
-        if (value == null) {
-            text.append("null");
+    private static StringBuilder formatDefault(StringBuilder text, Object value) {
+        TypeFormatters.get(value.getClass()).format(text, value);
+        return text;
+    }
+
+    /**
+     * The method handles used to build specialized formatters. These are only
+     * looked up when the first formatter is specialized.
+     */
+    private static final class Handles {
+
+        static final MethodType FORMAT_TYPE = MethodType.methodType(void.class, StringBuilder.class, Object[].class);
+        static final MethodHandle FORMAT;
+        static final MethodHandle APPEND_LITERAL;
+        static final MethodHandle IS_ARGUMENT_CLASS;
+        static final Map<Class<?>, MethodHandle> APPENDERS = new HashMap<>();
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                FORMAT = lookup.findVirtual(Segment.class, "format", FORMAT_TYPE);
+                APPEND_LITERAL = lookup.findStatic(Handles.class, "appendLiteral", MethodType.methodType(void.class, StringBuilder.class, String.class, Object[].class));
+                IS_ARGUMENT_CLASS = lookup.findStatic(Handles.class, "isArgumentClass", MethodType.methodType(boolean.class, int.class, Class.class, StringBuilder.class, Object[].class));
+                MethodType appendType = MethodType.methodType(void.class, int.class, StringBuilder.class, Object[].class);
+                APPENDERS.put(String.class, lookup.findStatic(Handles.class, "appendString", appendType));
+                APPENDERS.put(Integer.class, lookup.findStatic(Handles.class, "appendInteger", appendType));
+                APPENDERS.put(Long.class, lookup.findStatic(Handles.class, "appendLong", appendType));
+                APPENDERS.put(Double.class, lookup.findStatic(Handles.class, "appendDouble", appendType));
+                APPENDERS.put(Boolean.class, lookup.findStatic(Handles.class, "appendBoolean", appendType));
+            }
+            catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        static void appendLiteral(StringBuilder text, String literal, Object[] values) {
+            text.append(literal);
+        }
+
+        static boolean isArgumentClass(int index, Class<?> type, StringBuilder text, Object[] values) {
+            return index < values.length && values[index] != null && values[index].getClass() == type;
         }
-        else if (type == null) {
-            Class<?> valueClass = value.getClass();
-            if (valueClass == Integer.class) {
-                Format f = new DecimalFormat("#");
-                text.append(f.format(value));
+
+        static void appendString(int index, StringBuilder text, Object[] values) {
+            String value = (String) values[index];
+            int limit = maxArgumentLength;
+            if (value.length() > limit) {
+                text.append(value, 0, limit).append("[...]");
             }
-            else if (valueClass == Long.class) {
-                Format f = new DecimalFormat("#");
-                text.append(f.format(value));
+            else {
+                text.append(value);
             }
-            else if (valueClass == Float.class) {
-                if (((Float) value).isNaN()) {
-                    text.append("NaN");
-                }
-                else {
-                    Format f = new DecimalFormat("#.#");
-                    text.append(f.format(value));
+        }
+
+        static void appendInteger(int index, StringBuilder text, Object[] values) {
+            int start = text.length();
+            text.append(((Integer) values[index]).intValue());
+            truncate(text, start);
+        }
+
+        static void appendLong(int index, StringBuilder text, Object[] values) {
+            int start = text.length();
+            text.append(((Long) values[index]).longValue());
+            truncate(text, start);
+        }
+
+        static void appendDouble(int index, StringBuilder text, Object[] values) {
+            int start = text.length();
+            NumberRenderer.appendDecimal(text, ((Double) values[index]).doubleValue());
+            truncate(text, start);
+        }
+
+        static void appendBoolean(int index, StringBuilder text, Object[] values) {
+            int start = text.length();
+            text.append(((Boolean) values[index]).booleanValue());
+            truncate(text, start);
+        }
+
+        /**
+         * Cut the argument appended from start to the maximum argument length,
+         * as the generic path does.
+         */
+        private static void truncate(StringBuilder text, int start) {
+            int limit = maxArgumentLength;
+            if (text.length() - start > limit) {
+                text.setLength(start + limit);
+                text.append("[...]");
+            }
+        }
+    }
+
+    /**
+     * Per-thread buffers reused across format calls. A nested format, for
+     * example from within a value's toString(), finds the thread's buffers in
+     * use and gets fresh ones.
+     */
+    static final class Scratch {
+
+        private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+        private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+        final StringBuilder text = new StringBuilder(256);
+        final char[] chars = new char[1024];
+        boolean inUse = false;
+
+        static Scratch acquire() {
+            Scratch scratch = SCRATCH.get();
+            if (scratch.inUse) {
+                return new Scratch();
+            }
+            scratch.inUse = true;
+            scratch.text.setLength(0);
+            return scratch;
+        }
+
+        void release() {
+            if (text.capacity() > MAX_RETAINED_CAPACITY) {
+                // don't hold on to the memory used by an occasional huge message
+                text.setLength(0);
+                text.trimToSize();
+            }
+            inUse = false;
+        }
+
+        void copyTo(Appendable out) throws IOException {
+            copyTo(text, out);
+        }
+
+        /**
+         * Copy the given text to the appendable. A Writer is given the text's
+         * characters via this scratch's char buffer.
+         */
+        void copyTo(StringBuilder text, Appendable out) throws IOException {
+            if (out instanceof Writer) {
+                Writer writer = (Writer) out;
+                for (int start = 0, length = text.length(); start < length; start += chars.length) {
+                    int end = Math.min(start + chars.length, length);
+                    text.getChars(start, end, chars, 0);
+                    writer.write(chars, 0, end - start);
                 }
             }
-            else if (valueClass == Double.class) {
-                if (((Double) value).isNaN()) {
-                    text.append("NaN");
+            else {
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * A compiled part of the pattern.
+     */
+    private static abstract class Segment {
+
+        abstract void format(StringBuilder text, Object[] values);
+
+        /**
+         * Returns a (StringBuilder,Object[])void method handle that formats
+         * the segment. The argument types are the expected classes of the
+         * arguments, any of which may be null.
+         */
+        MethodHandle toMethodHandle(Class<?>[] argumentTypes) {
+            return Handles.FORMAT.bindTo(this);
+        }
+
+        /**
+         * Append the UTF-8 encoding of the segment to the buffer using the
+         * scratch text. Returns false, leaving the buffer's position
+         * unchanged, when the buffer is too small.
+         */
+        boolean encode(ByteBuffer buffer, Object[] values, StringBuilder scratch) {
+            scratch.setLength(0);
+            format(scratch, values);
+            return Utf8Encoder.encode(scratch, buffer);
+        }
+    }
+
+    /**
+     * Literal text, with quoting already removed.
+     */
+    private static final class Literal extends Segment {
+
+        private final String text;
+        private final byte[] bytes;
+
+        Literal(String text) {
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void format(StringBuilder text, Object[] values) {
+            text.append(this.text);
+        }
+
+        @Override
+        MethodHandle toMethodHandle(Class<?>[] argumentTypes) {
+            return MethodHandles.insertArguments(Handles.APPEND_LITERAL, 1, text);
+        }
+
+        @Override
+        boolean encode(ByteBuffer buffer, Object[] values, StringBuilder scratch) {
+            if (buffer.remaining() < bytes.length) {
+                return false;
+            }
+            buffer.put(bytes);
+            return true;
+        }
+    }
+
+    /**
+     * An argument slot. Missing arguments are rendered as "{index}" and null
+     * arguments as "null" whatever the argument's type.
+     */
+    private static abstract class Argument extends Segment {
+
+        protected final int index;
+
+        Argument(int index) {
+            this.index = index;
+        }
+
+        @Override
+        void format(StringBuilder text, Object[] values) {
+            if (index < values.length) {
+                Object value = values[index];
+                if (value == null) {
+                    text.append("null");
                 }
                 else {
-                    Format f = new DecimalFormat("#.#");
-                    text.append(f.format(value));
+                    formatValue(text, value);
                 }
             }
-            else if (value instanceof Number) {
-                text.append(value.toString());
-            }
-            else if (value instanceof Timestamp) {
-                Format f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
-                text.append(f.format(value));
+            else {
+                // TODO this situation is really an error and so don't allow it.
+                text.append('{').append(index).append('}');
             }
-            else if (value instanceof Date) {
-                Format f = new SimpleDateFormat("yyyy-MM-dd");
-                text.append(f.format(value));
+        }
+
+        abstract void formatValue(StringBuilder text, Object value);
+    }
+
+    private static final class DefaultArgument extends Argument {
+
+        DefaultArgument(int index) {
+            super(index);
+        }
+
+        @Override
+        void formatValue(StringBuilder text, Object value) {
+            int limit = maxArgumentLength;
+            if (limit == Integer.MAX_VALUE) {
+                formatDefault(text, value);
             }
-            else if (value instanceof Exception) {
-                Exception e = (Exception) value;
-                StringWriter w = new StringWriter();
-                e.printStackTrace(new PrintWriter(w));
-                text.append(w.toString());
+            else if (!BoundedRenderer.appendFormatted(text, value, limit)) {
+                text.append("[...]");
             }
-            else {
-                text.append(value.toString());
+        }
+
+        /**
+         * When the argument's expected class has a specialized renderer then
+         * guard it with a test of the argument's actual class and fall back to
+         * the generic path.
+         */
+        @Override
+        MethodHandle toMethodHandle(Class<?>[] argumentTypes) {
+            MethodHandle generic = super.toMethodHandle(argumentTypes);
+            Class<?> type = index < argumentTypes.length ? argumentTypes[index] : null;
+            MethodHandle append = type != null ? Handles.APPENDERS.get(type) : null;
+            if (append == null) {
+                return generic;
             }
+            return MethodHandles.guardWithTest(
+                MethodHandles.insertArguments(Handles.IS_ARGUMENT_CLASS, 0, index, type),
+                MethodHandles.insertArguments(append, 0, index),
+                generic);
         }
-        else if ("date".equals(type)) {
-            Format f = new SimpleDateFormat(style);
-            text.append(f.format(value));
+    }
+
+    private static final class DateArgument extends Argument {
+
+        private final DateRenderer renderer;
+
+        DateArgument(int index, String style) {
+            super(index);
+            this.renderer = new DateRenderer(style);
         }
-        else if ("number".equals(type)) {
-            Format f = new DecimalFormat(style);
-            text.append(f.format(value));
+
+        @Override
+        void formatValue(StringBuilder text, Object value) {
+            renderer.append(text, value);
         }
-        else if ("time".equals(type)) {
-            Format f = new SimpleDateFormat(style);
-            text.append(f.format(value));
+    }
+
+    /**
+     * DecimalFormat is not thread-safe and so each thread gets its own copy.
+     */
+    private static final class NumberArgument extends Argument {
+
+        private final ThreadLocal<DecimalFormat> format;
+
+        NumberArgument(int index, String style) {
+            super(index);
+            // check the style now rather than when first used
+            new DecimalFormat(style);
+            this.format = ThreadLocal.withInitial(() -> new DecimalFormat(style));
         }
-        else if ("json".equals(type)) {
-            try {
-                throw new IllegalStateException("Add reflection based JSON encoding here");
-            }
-            catch (Exception e) {
-                LogLog.error("unable to format to JSON", e);
-            }
+
+        @Override
+        void formatValue(StringBuilder text, Object value) {
+            text.append(format.get().format(value));
         }
-        else if ("string".equals(type)) {
-            Matcher m = STRING_STYLE.matcher(style);
-            if (m.matches()) {
-                String v = value.toString();
-                int start = m.group(1) == null ? 0 : Integer.parseInt(m.group(1)); // start is an index
-                int end
-                    = m.group(4) == null
-                        ? v.length() // no end value therefore use length
-                        : ":".equals(m.group(3)) // ie, end is a length
-                            ? start + Integer.parseInt(m.group(4)) // end is a length
-                            : Integer.parseInt(m.group(4)) + 1; // end is an index
-                if (end > v.length()) {
-                    end = v.length();
-                }
-                if (start > end) {
-                    start = end;
+    }
+
+    private static final class JsonArgument extends Argument {
+
+        JsonArgument(int index) {
+            super(index);
+        }
+
+        @Override
+        void formatValue(StringBuilder text, Object value) {
+            JSON_ENCODER.encode(text, value);
+        }
+    }
+
+    /**
+     * The string style is resolved once when the pattern is compiled. The style
+     * is either [offset][:length] or [start][..end].
+     */
+    private static final class StringArgument extends Argument {
+
+        private final boolean valid;
+        private final int start;
+        private final int length; // -1 when not given
+        private final int end; // -1 when not given, otherwise an exclusive index
+
+        StringArgument(int index, String style) {
+            super(index);
+            Matcher m = STRING_STYLE.matcher(style != null ? style : "");
+            this.valid = m.matches();
+            if (valid) {
+                this.start = m.group(1) == null ? 0 : Integer.parseInt(m.group(1)); // start is an index
+                if (m.group(4) == null) {
+                    this.length = -1;
+                    this.end = -1;
                 }
-                if (start > 0) {
-                    text.append("[...]");
+                else if (":".equals(m.group(3))) {
+                    this.length = Integer.parseInt(m.group(4)); // end is a length
+                    this.end = -1;
                 }
-                text.append(value.toString().subSequence(start, end));
-                if (end < v.length()) {
-                    text.append("[...]");
+                else {
+                    this.length = -1;
+                    this.end = Integer.parseInt(m.group(4)) + 1; // end is an index
                 }
             }
             else {
                 LogLog.error("unable to use string style " + style);
+                this.start = 0;
+                this.length = -1;
+                this.end = -1;
             }
         }
-        else {
-            throw new IllegalArgumentException("unsupported format type: format-type=" + type);
+
+        @Override
+        void formatValue(StringBuilder text, Object value) {
+            if (!valid) {
+                return;
+            }
+            int start = this.start;
+            int end = length >= 0 ? start + length : this.end; // -1 when there is no end
+            int limit = maxArgumentLength;
+            if (end < 0 || end - start > limit) {
+                end = start > Integer.MAX_VALUE - limit ? Integer.MAX_VALUE : start + limit;
+            }
+            // render no more of the value than will be shown
+            int p = text.length();
+            boolean complete = BoundedRenderer.appendToString(text, value, end);
+            int rendered = text.length() - p;
+            if (end > rendered) {
+                end = rendered;
+            }
+            if (start > end) {
+                start = end;
+            }
+            text.delete(p, p + start);
+            if (start > 0) {
+                text.insert(p, "[...]");
+            }
+            if (!complete) {
+                text.append("[...]");
+            }
         }
-        return text;
     }
 }
 
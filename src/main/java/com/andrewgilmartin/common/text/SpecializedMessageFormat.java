@@ -0,0 +1,81 @@
+package com.andrewgilmartin.common.text;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A {@link SimpleMessageFormat} compiled into a single method handle, in the
+ * spirit of StringConcatFactory. Each argument whose expected class was given
+ * when specializing is rendered by a dedicated handle guarded by a check of the
+ * argument's actual class, and otherwise by the generic path. Literal segments
+ * are bound into the handle. The dedicated renderers for String, Integer, Long,
+ * Double and Boolean arguments do not consult the registered
+ * {@link TypeFormatter}s but do honor
+ * {@link SimpleMessageFormat#setMaxArgumentLength(int)}.
+ *
+ * The JIT can only inline the whole render when the handle is a constant. For
+ * the hottest patterns keep the handle returned by {@link #getHandle()} in a
+ * static final field and call it with invokeExact. For example
+ *
+ * <pre>
+ * static final MethodHandle FORMAT = SimpleMessageFormat.getInstance("{0}={1}").specialize(String.class, Integer.class).getHandle();
+ * ...
+ * FORMAT.invokeExact(text, new Object[]{name, count});
+ * </pre>
+ */
+public final class SpecializedMessageFormat {
+
+    // configured
+    private final SimpleMessageFormat format;
+    private final MethodHandle handle;
+
+    SpecializedMessageFormat(SimpleMessageFormat format, MethodHandle handle) {
+        this.format = format;
+        this.handle = handle;
+    }
+
+    /**
+     * Returns the pattern this formatter was specialized from.
+     */
+    public String getPattern() {
+        return format.getPattern();
+    }
+
+    /**
+     * Returns the (StringBuilder,Object[])void method handle. The values array
+     * must not be null.
+     */
+    public MethodHandle getHandle() {
+        return handle;
+    }
+
+    public String format(Object... values) {
+        SimpleMessageFormat.Scratch scratch = SimpleMessageFormat.Scratch.acquire();
+        try {
+            return formatTo(scratch.text, values).toString();
+        }
+        finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Append the formatted values to the given text.
+     */
+    public StringBuilder formatTo(StringBuilder text, Object... values) {
+        if (values == null) {
+            values = new Object[0];
+        }
+        try {
+            handle.invokeExact(text, values);
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return text;
+    }
+}
+
+// END
@@ -0,0 +1,236 @@
+package com.andrewgilmartin.common.text;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders a throwable's stack trace for {@link SimpleMessageFormat}. Rendered
+ * traces are cached by a fingerprint of the class, message and frames of the
+ * throwable and of all of its causes and suppressed throwables, so a failure
+ * that repeats is rendered only once. A fingerprint match is checked against
+ * the whole of the cached throwable's shape.
+ *
+ * The full renderer produces exactly what printStackTrace() does. A compact
+ * renderer shows at most the given number of frames per throwable, collapses
+ * the frames a cause has in common with the throwable it caused, replaces runs
+ * of frames from the excluded packages with a count, and omits suppressed
+ * throwables.
+ */
+public class StackTraceRenderer {
+
+    // constants
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int MAX_CAUSES = 32;
+    // configured
+    private final boolean full;
+    private final int maxFrames;
+    private final String[] excludedPackages;
+    private final int cacheCapacity;
+    // cache
+    private final ConcurrentMap<Long, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Create a full renderer.
+     */
+    public StackTraceRenderer(int cacheCapacity) {
+        this.full = true;
+        this.maxFrames = Integer.MAX_VALUE;
+        this.excludedPackages = new String[0];
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    /**
+     * Create a compact renderer. Excluded packages are package name prefixes,
+     * eg "sun.reflect." or "org.junit.".
+     */
+    public StackTraceRenderer(int maxFrames, String[] excludedPackages, int cacheCapacity) {
+        this.full = false;
+        this.maxFrames = maxFrames;
+        this.excludedPackages = excludedPackages.clone();
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    /**
+     * Append the throwable's stack trace to the text.
+     */
+    public StringBuilder append(StringBuilder text, Throwable throwable) {
+        Object[] shape = shape(throwable);
+        long fingerprint = fingerprint(shape);
+        Entry entry = cache.get(fingerprint);
+        if (entry == null || !entry.matches(shape)) {
+            entry = new Entry(shape, render(throwable, (String) shape[2], (StackTraceElement[]) shape[3]));
+            if (cache.size() >= cacheCapacity) {
+                Iterator<Long> i = cache.keySet().iterator();
+                if (i.hasNext()) {
+                    i.next();
+                    i.remove();
+                }
+            }
+            cache.put(fingerprint, entry);
+        }
+        return text.append(entry.text);
+    }
+
+    private String render(Throwable throwable, String message, StackTraceElement[] frames) {
+        if (full) {
+            StringWriter w = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(w));
+            return w.toString();
+        }
+        StringBuilder text = new StringBuilder();
+        Throwable[] seen = new Throwable[MAX_CAUSES];
+        seen[0] = throwable;
+        appendFrames(text.append(message).append(LINE_SEPARATOR), frames, frames.length);
+        StackTraceElement[] enclosing = frames;
+        for (int c = 1; c < MAX_CAUSES; c++) {
+            Throwable cause = seen[c - 1].getCause();
+            if (cause == null || isSeen(seen, c, cause)) {
+                break;
+            }
+            seen[c] = cause;
+            StackTraceElement[] causeFrames = cause.getStackTrace();
+            // how many frames at the bottom does the cause have in common with the enclosing trace?
+            int m = causeFrames.length - 1;
+            for (int n = enclosing.length - 1; m >= 0 && n >= 0 && causeFrames[m].equals(enclosing[n]); m--, n--) {
+                // empty
+            }
+            text.append("Caused by: ").append(cause.toString()).append(LINE_SEPARATOR);
+            appendFrames(text, causeFrames, m + 1);
+            enclosing = causeFrames;
+        }
+        return text.toString();
+    }
+
+    /**
+     * Append the first count frames, less those over the maximum or excluded,
+     * and note how many were left out.
+     */
+    private void appendFrames(StringBuilder text, StackTraceElement[] frames, int count) {
+        int shown = 0;
+        int filtered = 0;
+        int i = 0;
+        for (; i < count && shown < maxFrames; i++) {
+            StackTraceElement frame = frames[i];
+            if (isExcluded(frame.getClassName())) {
+                filtered += 1;
+            }
+            else {
+                if (filtered > 0) {
+                    text.append("\t... ").append(filtered).append(" filtered").append(LINE_SEPARATOR);
+                    filtered = 0;
+                }
+                text.append("\tat ").append(frame.toString()).append(LINE_SEPARATOR);
+                shown += 1;
+            }
+        }
+        if (filtered > 0) {
+            text.append("\t... ").append(filtered).append(" filtered").append(LINE_SEPARATOR);
+        }
+        int more = frames.length - i;
+        if (more > 0) {
+            text.append("\t... ").append(more).append(" more").append(LINE_SEPARATOR);
+        }
+    }
+
+    private boolean isExcluded(String className) {
+        for (String excludedPackage : excludedPackages) {
+            if (className.startsWith(excludedPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeen(Throwable[] seen, int count, Throwable throwable) {
+        for (int i = 0; i < count; i++) {
+            if (seen[i] == throwable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns what the rendered trace depends on: for the throwable and then,
+     * in the order printStackTrace() visits them, for each of its suppressed
+     * throwables and causes, their relation to the throwable enclosing them,
+     * their class, their message and their frames.
+     */
+    private static Object[] shape(Throwable throwable) {
+        List<Object> parts = new ArrayList<>();
+        shape(parts, throwable, "", Collections.newSetFromMap(new IdentityHashMap<>()));
+        return parts.toArray();
+    }
+
+    private static void shape(List<Object> parts, Throwable throwable, String relation, Set<Throwable> seen) {
+        if (!seen.add(throwable)) {
+            parts.add(relation + " circular");
+            return;
+        }
+        parts.add(relation);
+        parts.add(throwable.getClass());
+        parts.add(throwable.toString());
+        parts.add(throwable.getStackTrace());
+        if (seen.size() < MAX_CAUSES) {
+            for (Throwable suppressed : throwable.getSuppressed()) {
+                shape(parts, suppressed, "suppressed", seen);
+            }
+            Throwable cause = throwable.getCause();
+            if (cause != null) {
+                shape(parts, cause, "cause", seen);
+            }
+        }
+        parts.add("end"); // so that nesting is part of the shape
+    }
+
+    /**
+     * Returns a hash of the shape.
+     */
+    private static long fingerprint(Object[] shape) {
+        long fingerprint = 0;
+        for (Object part : shape) {
+            fingerprint = part instanceof StackTraceElement[]
+                    ? fingerprint(Long.hashCode(fingerprint), (StackTraceElement[]) part)
+                    : fingerprint * 31 + part.hashCode();
+        }
+        return fingerprint;
+    }
+
+    private static long fingerprint(int seed, StackTraceElement[] frames) {
+        long fingerprint = seed;
+        for (StackTraceElement frame : frames) {
+            fingerprint = fingerprint * 0x9E3779B97F4A7C15L + frame.hashCode();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * A rendered trace along with the shape of the throwable, causes and all,
+     * to check that a fingerprint match is not a collision.
+     */
+    private static final class Entry {
+
+        private final Object[] shape;
+        private final String text;
+
+        Entry(Object[] shape, String text) {
+            this.shape = shape;
+            this.text = text;
+        }
+
+        boolean matches(Object[] shape) {
+            return Arrays.deepEquals(this.shape, shape);
+        }
+    }
+}
+
+// END
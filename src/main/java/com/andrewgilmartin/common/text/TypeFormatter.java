@@ -0,0 +1,15 @@
+package com.andrewgilmartin.common.text;
+
+/**
+ * Renders values of a type for {@link SimpleMessageFormat} arguments that have
+ * no format type, eg "{0}". Register with
+ * {@link SimpleMessageFormat#registerTypeFormatter(Class, TypeFormatter)}.
+ * Implementations must be thread-safe and should append directly to the text
+ * rather than create intermediate strings. The value is never null.
+ */
+public interface TypeFormatter<T> {
+
+    void format(StringBuilder text, T value);
+}
+
+// END
@@ -0,0 +1,116 @@
+package com.andrewgilmartin.common.text;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The registry of {@link TypeFormatter}s. A class's formatter is resolved once
+ * and kept in a ClassValue and so dispatch is a single lookup. The formatter
+ * registered for the class itself is used, or else the one for its nearest
+ * superclass, or else the one for its nearest interface, or else the one for
+ * Object. Registering a formatter invalidates all previous resolutions.
+ */
+final class TypeFormatters {
+
+    // constants
+    static final TypeFormatter<Object> OBJECT_FORMATTER = (text, value) -> text.append(value.toString());
+    // state
+    private static final Object LOCK = new Object();
+    private static volatile Map<Class<?>, TypeFormatter<?>> registered = Collections.emptyMap();
+    private static volatile int version = 0;
+    private static final ClassValue<Resolution> RESOLUTIONS = new ClassValue<Resolution>() {
+        @Override
+        protected Resolution computeValue(Class<?> type) {
+            int v = version;
+            return new Resolution(v, resolve(registered, type));
+        }
+    };
+
+    private TypeFormatters() {
+        // empty
+    }
+
+    /**
+     * Register the formatter for the type. Registering null removes the
+     * type's formatter.
+     */
+    static <T> void register(Class<T> type, TypeFormatter<? super T> formatter) {
+        synchronized (LOCK) {
+            Map<Class<?>, TypeFormatter<?>> r = new HashMap<>(registered);
+            if (formatter != null) {
+                r.put(type, formatter);
+            }
+            else {
+                r.remove(type);
+            }
+            registered = r;
+            version += 1;
+        }
+    }
+
+    /**
+     * Returns the formatter for the class.
+     */
+    @SuppressWarnings("unchecked")
+    static TypeFormatter<Object> get(Class<?> type) {
+        Resolution resolution = RESOLUTIONS.get(type);
+        if (resolution.version != version) {
+            RESOLUTIONS.remove(type);
+            resolution = RESOLUTIONS.get(type);
+        }
+        return (TypeFormatter<Object>) resolution.formatter;
+    }
+
+    private static TypeFormatter<?> resolve(Map<Class<?>, TypeFormatter<?>> registered, Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            TypeFormatter<?> f = registered.get(c);
+            if (f != null) {
+                return f;
+            }
+        }
+        // breadth first through the interfaces of the class and its superclasses
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        Set<Class<?>> seen = new HashSet<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Class<?> i : c.getInterfaces()) {
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Class<?> i = queue.remove();
+            if (seen.add(i)) {
+                TypeFormatter<?> f = registered.get(i);
+                if (f != null) {
+                    return f;
+                }
+                for (Class<?> j : i.getInterfaces()) {
+                    queue.add(j);
+                }
+            }
+        }
+        TypeFormatter<?> f = registered.get(Object.class);
+        return f != null ? f : OBJECT_FORMATTER;
+    }
+
+    /**
+     * A class's resolved formatter and the registry version it was resolved
+     * against.
+     */
+    private static final class Resolution {
+
+        private final int version;
+        private final TypeFormatter<?> formatter;
+
+        Resolution(int version, TypeFormatter<?> formatter) {
+            this.version = version;
+            this.formatter = formatter;
+        }
+    }
+}
+
+// END
@@ -0,0 +1,88 @@
+package com.andrewgilmartin.common.text;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes characters as UTF-8 directly into a ByteBuffer. Unpaired surrogates
+ * are encoded as '?', as String.getBytes() does.
+ */
+final class Utf8Encoder {
+
+    private Utf8Encoder() {
+        // empty
+    }
+
+    /**
+     * Append the UTF-8 encoding of the text to the buffer. Returns false,
+     * leaving the buffer's position unchanged, when the buffer does not have
+     * room for all of the text.
+     */
+    static boolean encode(CharSequence text, ByteBuffer buffer) {
+        int start = buffer.position();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (!buffer.hasRemaining()) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800) {
+                if (buffer.remaining() < 2) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                if (buffer.remaining() < 4) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            }
+            else if (Character.isSurrogate(c)) {
+                if (!buffer.hasRemaining()) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+                buffer.put((byte) '?');
+            }
+            else {
+                if (buffer.remaining() < 3) {
+                    ((Buffer) buffer).position(start);
+                    return false;
+                }
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a buffer, direct if the given one is, of at least twice the
+     * capacity and holding a copy of the given buffer's content up to its
+     * position.
+     */
+    static ByteBuffer grow(ByteBuffer buffer) {
+        int capacity = Math.max(buffer.capacity() * 2, 64);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        grown.order(buffer.order());
+        ByteBuffer content = buffer.duplicate();
+        ((Buffer) content).flip();
+        grown.put(content);
+        return grown;
+    }
+}
+
+// END
@@ -0,0 +1,333 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ * Moves the formatting and appending of {@link CommonLogger} events off the
+ * calling thread. The caller only claims a slot in a preallocated ring buffer
+ * and copies into it the event's level, pattern, arguments, cause, time,
+ * thread name and NDC. A background thread formats the events with
+ * {@link SimpleMessageFormat} and gives them to the {@link LogBackend},
+ * draining all of the waiting events at once.
+ *
+ * When the buffer is full the {@link OverflowPolicy} decides whether the
+ * caller waits for room or the event is dropped. Dropped events are counted.
+ *
+ * The arguments are not copied and so mutable arguments changed before the
+ * event is formatted will be formatted with their changed values. The
+ * caller's NDC and a copy of its MDC are captured with the event. MDC values
+ * are not copied and so, like arguments, are rendered as they are when the
+ * event is appended. The events' location information is not available.
+ *
+ * An event queued while the dispatcher closes is appended by
+ * {@link #close()} or, if it is queued after close() has appended the
+ * others, by the thread that queued it.
+ *
+ * Install with {@link CommonLogger#setDispatcher(AsyncLogDispatcher)}.
+ */
+public final class AsyncLogDispatcher implements AutoCloseable {
+
+    /**
+     * What to do with an event when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for room.
+         */
+        BLOCK,
+        /**
+         * Drop the event.
+         */
+        DROP,
+        /**
+         * Drop events below the drop threshold level and wait for room for
+         * the others.
+         */
+        DROP_BELOW_LEVEL
+    }
+
+    // constants
+    private static final String FQCN = CommonLogger.class.getName();
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // configured
+    private final Slot[] slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final Level dropThreshold;
+    // state
+    private final AtomicLong claimed = new AtomicLong(); // the next sequence to claim
+    private volatile long consumed; // every sequence before this one is free
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private boolean drained; // guarded by this
+    private final Thread consumer;
+    // metrics
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Create and start a dispatcher. The capacity is rounded up to a power of
+     * two. The drop threshold is only used by
+     * {@link OverflowPolicy#DROP_BELOW_LEVEL}.
+     */
+    public AsyncLogDispatcher(int capacity, OverflowPolicy policy, Level dropThreshold) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.policy = policy;
+        this.dropThreshold = dropThreshold != null ? dropThreshold : Level.OFF;
+        this.consumer = new Thread(this::consume, "CommonLogger-async");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of events waiting to be appended.
+     */
+    public int getPendingCount() {
+        return (int) (claimed.get() - consumed);
+    }
+
+    /**
+     * Queue an event. Either the pattern and arguments or the message is
+     * given. Returns false if the event was dropped.
+     */
+    boolean publish(Logger logger, Level level, Throwable cause, String pattern, Object[] arguments, Object message) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        long sequence;
+        for (;;) {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                if (policy == OverflowPolicy.DROP || (policy == OverflowPolicy.DROP_BELOW_LEVEL && !level.isGreaterOrEqual(dropThreshold))) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(this, FULL_NANOS);
+            }
+            else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.logger = logger;
+        slot.level = level;
+        slot.cause = cause;
+        slot.pattern = pattern;
+        slot.arguments = arguments;
+        slot.message = message;
+        slot.timestamp = System.currentTimeMillis();
+        slot.threadName = Thread.currentThread().getName();
+        slot.ndc = NDC.get();
+        Hashtable<?, ?> mdc = MDC.getContext();
+        slot.mdc = mdc != null && !mdc.isEmpty() ? (Hashtable<?, ?>) mdc.clone() : null;
+        slot.published = sequence;
+        if (!running) {
+            // the consumer may have stopped before this slot was claimed
+            appendIfDrained();
+        }
+        else if (idle) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until every event queued before this call has been appended or
+     * the timeout has passed. Returns false on timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (consumed < target) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, FULL_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting events, append those already queued, and stop the
+     * background thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        boolean stopped = false;
+        try {
+            consumer.join();
+            stopped = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (stopped && !drained) {
+                drain();
+                drained = true;
+            }
+        }
+    }
+
+    /**
+     * Once close() has drained the buffer, append the events published since,
+     * as no consumer is left to.
+     */
+    private synchronized void appendIfDrained() {
+        if (drained) {
+            drain();
+        }
+    }
+
+    /**
+     * Append the published events following those consumed, stopping at a
+     * slot claimed but not yet published. Its publisher appends it.
+     */
+    private synchronized void drain() {
+        long next = consumed;
+        while (next < claimed.get()) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published != next) {
+                return;
+            }
+            append(slot);
+            slot.clear();
+            consumed = ++next;
+        }
+    }
+
+    private void consume() {
+        long next = 0;
+        for (;;) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published == next) {
+                append(slot);
+                slot.clear();
+                consumed = ++next;
+            }
+            else if (!running && claimed.get() == next) {
+                return;
+            }
+            else {
+                idle = true;
+                if (slot.published != next && running) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    private static void append(Slot slot) {
+        try {
+            LoggingMetrics metrics = LoggingMetrics.getInstance();
+            LoggerMetrics m = metrics != null ? metrics.forLogger(slot.logger.getName()) : null;
+            Object traced = CommonLogger.isTracing() ? JfrEvents.begin() : null;
+            long t0 = m != null ? System.nanoTime() : 0;
+            Object message = slot.message;
+            if (slot.pattern != null) {
+                String text = CommonLogger.render(slot.pattern, slot.arguments);
+                if (m != null) {
+                    long t1 = System.nanoTime();
+                    m.formatted(slot.level, text.length(), t1 - t0);
+                    t0 = t1;
+                }
+                message = text;
+            }
+            LoggingEvent event = new LoggingEvent(
+                FQCN,
+                slot.logger,
+                slot.timestamp,
+                slot.level,
+                message,
+                slot.threadName,
+                slot.cause != null ? new ThrowableInformation(slot.cause) : null,
+                slot.ndc,
+                null,
+                // never null so that Log4j does not look in this thread's MDC
+                slot.mdc != null ? slot.mdc : Collections.emptyMap());
+            CommonLogger.getBackend().append(event);
+            if (m != null) {
+                m.appended(slot.level, System.nanoTime() - t0);
+            }
+            if (traced != null) {
+                JfrEvents.commit(traced, slot.logger, slot.level, slot.pattern, message);
+            }
+        }
+        catch (Throwable e) {
+            // an Error too, as without the consumer every blocked publisher waits forever
+            LogLog.error("unable to append event: pattern=" + slot.pattern, e);
+        }
+    }
+
+    /**
+     * A preallocated event. The published sequence is written last and so
+     * makes the other fields visible to the consumer.
+     */
+    private static final class Slot {
+
+        volatile long published = -1;
+        Logger logger;
+        Level level;
+        Throwable cause;
+        String pattern;
+        Object[] arguments;
+        Object message;
+        long timestamp;
+        String threadName;
+        String ndc;
+        Hashtable<?, ?> mdc;
+
+        void clear() {
+            logger = null;
+            cause = null;
+            pattern = null;
+            arguments = null;
+            message = null;
+            ndc = null;
+            mdc = null;
+        }
+    }
+}
+
+// END
@@ -0,0 +1,205 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.cli.ToolBase;
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * Decodes the output of {@link BinaryLogEncoder} into text, one line per
+ * event followed by the lines of its cause, if any. The message is formatted
+ * with {@link SimpleMessageFormat} and so is the text that would have been
+ * logged. Dates are formatted in the decoder's time zone.
+ *
+ * An event whose pattern or name is not defined, which only a damaged
+ * stream has, is decoded with a placeholder.
+ *
+ * Usage: BinaryLogDecoder [--output file] file...
+ */
+public class BinaryLogDecoder extends ToolBase {
+
+    // constants
+    private static final String LINE = "{0} {1} [{2}] {3} - {4}\n";
+    // configured
+    private File output;
+    private final List<File> inputs = new ArrayList<>();
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+
+    public void addPositional(File input) {
+        inputs.add(input);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        Writer out = new BufferedWriter(new OutputStreamWriter(output != null ? new FileOutputStream(output) : System.out, StandardCharsets.UTF_8));
+        try {
+            for (File input : inputs) {
+                try (InputStream in = new FileInputStream(input)) {
+                    decode(in, out);
+                }
+            }
+        }
+        finally {
+            if (output != null) {
+                out.close();
+            }
+            else {
+                out.flush();
+            }
+        }
+    }
+
+    @Override
+    protected void showHelp() {
+        System.err.printf("usage: %s [--output file] file...\n", getClass().getName());
+    }
+
+    /**
+     * Decode the stream to the text. Returns the number of events decoded.
+     */
+    public long decode(InputStream in, Appendable text) throws IOException {
+        DataInputStream data = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        Map<Integer, String> patterns = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        long count = 0;
+        for (;;) {
+            int type = data.read();
+            if (type < 0) {
+                return count;
+            }
+            try {
+                switch (type) {
+                    case BinaryLogEncoder.PATTERN:
+                        patterns.put(data.readInt(), readString(data));
+                        break;
+                    case BinaryLogEncoder.NAME:
+                        names.put(data.readInt(), readString(data));
+                        break;
+                    case BinaryLogEncoder.EVENT:
+                    case BinaryLogEncoder.TEXT: {
+                        long time = data.readLong();
+                        Level level = Level.toLevel(data.readInt());
+                        String logger = readName(names, data);
+                        String thread = readName(names, data);
+                        String message = type == BinaryLogEncoder.EVENT
+                                ? format(patterns, data)
+                                : readString(data);
+                        String cause = data.readByte() != 0 ? readString(data) : null;
+                        text.append(SimpleMessageFormat.format(LINE, Instant.ofEpochMilli(time), level, thread, logger, message));
+                        if (cause != null) {
+                            text.append(cause).append('\n');
+                        }
+                        count += 1;
+                        break;
+                    }
+                    default:
+                        throw new StreamCorruptedException("unknown record type " + type);
+                }
+            }
+            catch (EOFException e) {
+                LogLog.warn("truncated record at end of stream");
+                return count;
+            }
+        }
+    }
+
+    private static String readName(Map<Integer, String> names, DataInputStream data) throws IOException {
+        int id = data.readInt();
+        if (id == BinaryLogEncoder.INLINE_NAME) {
+            return readString(data);
+        }
+        if (id < 0) {
+            return null;
+        }
+        String name = names.get(id);
+        return name != null ? name : "<undefined name " + id + ">";
+    }
+
+    private static String format(Map<Integer, String> patterns, DataInputStream data) throws IOException {
+        int id = data.readInt();
+        Object[] arguments = new Object[data.readByte()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = readArgument(data);
+        }
+        String pattern = patterns.get(id);
+        if (pattern == null) {
+            return "<undefined pattern " + id + ">";
+        }
+        try {
+            return SimpleMessageFormat.format(pattern, arguments);
+        }
+        catch (IllegalArgumentException e) {
+            return pattern;
+        }
+    }
+
+    private static Object readArgument(DataInputStream data) throws IOException {
+        byte tag = data.readByte();
+        switch (tag) {
+            case BinaryLogEncoder.NULL:
+                return null;
+            case BinaryLogEncoder.STRING:
+                return readString(data);
+            case BinaryLogEncoder.CHARACTER:
+                return data.readChar();
+            case BinaryLogEncoder.BOOLEAN:
+                return data.readByte() != 0;
+            case BinaryLogEncoder.INTEGER:
+                return data.readInt();
+            case BinaryLogEncoder.LONG:
+                return data.readLong();
+            case BinaryLogEncoder.FLOAT:
+                return data.readFloat();
+            case BinaryLogEncoder.DOUBLE:
+                return data.readDouble();
+            case BinaryLogEncoder.DATE:
+                return new Date(data.readLong());
+            case BinaryLogEncoder.TIMESTAMP: {
+                Timestamp timestamp = new Timestamp(data.readLong());
+                timestamp.setNanos(data.readInt());
+                return timestamp;
+            }
+            default:
+                throw new StreamCorruptedException("unknown argument tag " + tag);
+        }
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String... args) throws Exception {
+        new BinaryLogDecoder().run(args);
+    }
+}
+
+// END
@@ -0,0 +1,371 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.FormattedMessage;
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Level;
+
+/**
+ * Encodes log events as compact binary records rather than text, in the
+ * manner of NanoLog. Each distinct message pattern, logger name and thread
+ * name is given an id once and an event records only the ids, its time and
+ * level, and its raw arguments. Formatting is left to
+ * {@link BinaryLogDecoder}, which produces the text
+ * {@link SimpleMessageFormat} would have.
+ *
+ * Arguments that are null, strings, characters, booleans, integers, longs,
+ * floats, doubles, dates or timestamps are recorded as is. An event with
+ * other arguments, or without a pattern, is recorded as its formatted text.
+ * The patterns of {@link CommonLogger}'s fixed-arity overloads and of
+ * {@link FormattedMessage}s are recorded.
+ *
+ * An id is defined in a thread's output before the thread's first use of it
+ * and so the output must be written in per-thread order, as
+ * {@link DirectLogBackend} does. A thread's definitions are written again
+ * in its events until the writer calls {@link #commit()}, so that an event
+ * dropped after it was encoded does not take its definitions with it.
+ * Records are big-endian:
+ *
+ * <pre>
+ * 'P' id:int pattern:string
+ * 'N' id:int name:string
+ * 'E' time:long level:int logger:name thread:name pattern:int count:byte (tag:byte value)* cause
+ * 'T' time:long level:int logger:name thread:name text:string cause
+ * </pre>
+ *
+ * A string is its UTF-8 length, or -1 for null, followed by its UTF-8 bytes,
+ * and a cause is 0, or 1 followed by the cause's rendering as a string. A
+ * name is its id, -1 for null, or -2 followed by the name as a string.
+ *
+ * Patterns and names are given ids up to separate limits, as thread names,
+ * eg from a pool that names each new thread, may be unbounded. Past the
+ * limit an event is recorded as text and a name is recorded inline.
+ */
+public final class BinaryLogEncoder implements LogEncoder {
+
+    // constants
+    static final byte PATTERN = 'P';
+    static final byte NAME = 'N';
+    static final byte EVENT = 'E';
+    static final byte TEXT = 'T';
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte CHARACTER = 2;
+    static final byte BOOLEAN = 3;
+    static final byte INTEGER = 4;
+    static final byte LONG = 5;
+    static final byte FLOAT = 6;
+    static final byte DOUBLE = 7;
+    static final byte DATE = 8;
+    static final byte TIMESTAMP = 9;
+    static final int NULL_NAME = -1;
+    static final int INLINE_NAME = -2;
+    private static final int MAX_PATTERNS = 10000;
+    private static final int MAX_NAMES = 10000;
+    // configured
+    private final int maxPatterns;
+    private final int maxNames;
+    // state
+    private final ConcurrentMap<String, Integer> patterns = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> names = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPattern = new AtomicInteger();
+    private final AtomicInteger nextName = new AtomicInteger();
+    private final ThreadLocal<Defined> defined = ThreadLocal.withInitial(Defined::new);
+
+    public BinaryLogEncoder() {
+        this(MAX_PATTERNS, MAX_NAMES);
+    }
+
+    /**
+     * Create an encoder giving ids to at most the given number of patterns
+     * and of names.
+     */
+    BinaryLogEncoder(int maxPatterns, int maxNames) {
+        this.maxPatterns = maxPatterns;
+        this.maxNames = maxNames;
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer buffer, long timestamp, Level level, String loggerName, String threadName, Object message, Throwable cause) {
+        Defined d = defined.get();
+        int start = buffer.position();
+        for (;;) {
+            // the last event's definitions, if uncommitted, are written again
+            d.pendingPatterns.clear();
+            d.pendingNames.clear();
+            try {
+                write(buffer, d, timestamp, level, loggerName, threadName, message, cause);
+                return buffer;
+            }
+            catch (BufferOverflowException e) {
+                ((Buffer) buffer).position(start);
+                buffer = JsonLinesEncoder.grow(buffer);
+            }
+        }
+    }
+
+    /**
+     * The definitions in the current thread's last event are written.
+     */
+    @Override
+    public void commit() {
+        Defined d = defined.get();
+        d.patterns.or(d.pendingPatterns);
+        d.names.or(d.pendingNames);
+        d.pendingPatterns.clear();
+        d.pendingNames.clear();
+    }
+
+    private void write(ByteBuffer buffer, Defined d, long timestamp, Level level, String loggerName, String threadName, Object message, Throwable cause) {
+        int logger = define(buffer, d, loggerName);
+        int thread = define(buffer, d, threadName);
+        String pattern = null;
+        Object[] arguments = null;
+        if (message instanceof CommonLogger.Message) {
+            CommonLogger.Message m = (CommonLogger.Message) message;
+            pattern = m.getPattern();
+            arguments = new Object[m.getCount()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = m.getParameter(i);
+            }
+        }
+        else if (message instanceof FormattedMessage) {
+            FormattedMessage m = (FormattedMessage) message;
+            pattern = m.getPattern();
+            arguments = m.getArguments();
+            if (arguments == null) {
+                arguments = new Object[0];
+            }
+        }
+        int id = pattern != null && isRecordable(arguments) ? pattern(buffer, d, pattern) : -1;
+        if (id >= 0) {
+            buffer.put(EVENT);
+            putHeader(buffer, timestamp, level, logger, loggerName, thread, threadName);
+            buffer.putInt(id);
+            buffer.put((byte) arguments.length);
+            for (Object argument : arguments) {
+                putArgument(buffer, argument);
+            }
+        }
+        else {
+            buffer.put(TEXT);
+            putHeader(buffer, timestamp, level, logger, loggerName, thread, threadName);
+            putString(buffer, String.valueOf(message));
+        }
+        if (cause != null) {
+            buffer.put((byte) 1);
+            putString(buffer, SimpleMessageFormat.format("{0}", cause));
+        }
+        else {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Define the name, if need be, and return its id, or NULL_NAME or
+     * INLINE_NAME.
+     */
+    private int define(ByteBuffer buffer, Defined d, String name) {
+        if (name == null) {
+            return NULL_NAME;
+        }
+        int id = id(names, nextName, maxNames, name);
+        if (id < 0) {
+            return INLINE_NAME;
+        }
+        if (!d.names.get(id) && !d.pendingNames.get(id)) {
+            buffer.put(NAME);
+            buffer.putInt(id);
+            putString(buffer, name);
+            d.pendingNames.set(id);
+        }
+        return id;
+    }
+
+    private int pattern(ByteBuffer buffer, Defined d, String pattern) {
+        int id = id(patterns, nextPattern, maxPatterns, pattern);
+        if (id >= 0 && !d.patterns.get(id) && !d.pendingPatterns.get(id)) {
+            buffer.put(PATTERN);
+            buffer.putInt(id);
+            putString(buffer, pattern);
+            d.pendingPatterns.set(id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the value's id, or -1 if there are too many to give it one.
+     */
+    private static int id(ConcurrentMap<String, Integer> ids, AtomicInteger next, int max, String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (ids.size() >= max) {
+            return -1;
+        }
+        return ids.computeIfAbsent(value, v -> next.getAndIncrement());
+    }
+
+    private static void putHeader(ByteBuffer buffer, long timestamp, Level level, int logger, String loggerName, int thread, String threadName) {
+        buffer.putLong(timestamp);
+        buffer.putInt(level != null ? level.toInt() : Level.OFF_INT);
+        putName(buffer, logger, loggerName);
+        putName(buffer, thread, threadName);
+    }
+
+    private static void putName(ByteBuffer buffer, int id, String name) {
+        buffer.putInt(id);
+        if (id == INLINE_NAME) {
+            putString(buffer, name);
+        }
+    }
+
+    private static boolean isRecordable(Object[] arguments) {
+        if (arguments.length > Byte.MAX_VALUE) {
+            return false;
+        }
+        for (Object argument : arguments) {
+            if (tag(argument) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte tag(Object argument) {
+        if (argument == null) {
+            return NULL;
+        }
+        Class<?> type = argument.getClass();
+        if (type == String.class) {
+            return STRING;
+        }
+        if (type == Integer.class) {
+            return INTEGER;
+        }
+        if (type == Long.class) {
+            return LONG;
+        }
+        if (type == Double.class) {
+            return DOUBLE;
+        }
+        if (type == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (type == Character.class) {
+            return CHARACTER;
+        }
+        if (type == Float.class) {
+            return FLOAT;
+        }
+        if (type == Date.class) {
+            return DATE;
+        }
+        if (type == Timestamp.class) {
+            return TIMESTAMP;
+        }
+        return -1;
+    }
+
+    private static void putArgument(ByteBuffer buffer, Object argument) {
+        byte tag = tag(argument);
+        buffer.put(tag);
+        switch (tag) {
+            case NULL:
+                break;
+            case STRING:
+                putString(buffer, (String) argument);
+                break;
+            case CHARACTER:
+                buffer.putChar((Character) argument);
+                break;
+            case BOOLEAN:
+                buffer.put((byte) ((Boolean) argument ? 1 : 0));
+                break;
+            case INTEGER:
+                buffer.putInt((Integer) argument);
+                break;
+            case LONG:
+                buffer.putLong((Long) argument);
+                break;
+            case FLOAT:
+                buffer.putFloat((Float) argument);
+                break;
+            case DOUBLE:
+                buffer.putDouble((Double) argument);
+                break;
+            case DATE:
+                buffer.putLong(((Date) argument).getTime());
+                break;
+            case TIMESTAMP:
+                buffer.putLong(((Timestamp) argument).getTime());
+                buffer.putInt(((Timestamp) argument).getNanos());
+                break;
+            default:
+                throw new IllegalStateException("unrecordable argument: tag=" + tag);
+        }
+    }
+
+    /**
+     * Put the string's UTF-8 length and bytes. An unpaired surrogate is
+     * encoded as '?'.
+     */
+    private static void putString(ByteBuffer buffer, String text) {
+        if (text == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        int lengthAt = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (cp & 0x3f)));
+            }
+            else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            }
+            else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        buffer.putInt(lengthAt, buffer.position() - start);
+    }
+
+    /**
+     * The ids the current thread has defined, and those defined by the event
+     * last encoded, until committed.
+     */
+    private static final class Defined {
+
+        final BitSet patterns = new BitSet();
+        final BitSet names = new BitSet();
+        final BitSet pendingPatterns = new BitSet();
+        final BitSet pendingNames = new BitSet();
+    }
+}
+
+// END
@@ -1,141 +1,1586 @@
 package com.andrewgilmartin.common.util.logger;
 
+import com.andrewgilmartin.common.text.FormattedMessage;
 import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.apache.log4j.Appender;
+import org.apache.log4j.Category;
 import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.helpers.FileWatchdog;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.spi.HierarchyEventListener;
 
 /**
  * A logger that builds upon Log4j and MessageFormat.
+ *
+ * A {@link FormattedMessage} is handed to Log4j as is and so is only
+ * formatted if an appender renders it.
+ *
+ * When an {@link AsyncLogDispatcher} is installed enabled events are queued
+ * and formatted and appended on the dispatcher's thread.
+ *
+ * Enabled events are given to the {@link LogBackend}, by default
+ * {@link Log4jBackend}. {@link DirectLogBackend} writes JSON lines without
+ * the lock Log4j's appenders take per event.
+ *
+ * There is one instance per name. Each instance caches its Log4j logger's
+ * effective level, and the repository's threshold, and so checking whether a
+ * level is enabled costs one field read. Log4j does not report level or
+ * threshold changes, only appenders being added or removed, and so configure
+ * Log4j with {@link #configure(Properties)}, {@link #configure(URL)} or
+ * {@link #configureAndWatch(String, long)}, which refresh the cached levels
+ * once configured. Call {@link #refreshLevels()} after configuring Log4j by
+ * other means or after changing a level or the threshold directly.
+ *
+ * The overloads taking up to four parameters, and those taking a single
+ * primitive, allocate nothing when the level is disabled as a primitive is
+ * boxed only after the level check. When enabled the message is handed to
+ * Log4j unformatted, as a {@link FormattedMessage} is, and is formatted from
+ * a reused per-thread parameter array only if an appender renders it.
+ *
+ * The overloads taking {@link Supplier} parameters, or a supplier of the
+ * whole message, call the suppliers only when the level is enabled. An event
+ * recorded by a {@link FlightRecorder} keeps its suppliers, which are called
+ * only if it is replayed or dumped. A non-capturing lambda is not allocated
+ * and so is as cheap as a plain parameter when the level is disabled.
+ *
+ * A {@link LogLimiter} can limit how often events with the same pattern are
+ * logged.
+ *
+ * Events with typed key-value fields are logged with {@link #atInfo()}, etc,
+ * and can be written as JSON lines with {@link JsonLinesLayout} or
+ * {@link JsonLinesEncoder}.
+ *
+ * When a {@link FlightRecorder} is installed the events below a logger's
+ * level, down to the recorder's level, pass the level check and are recorded
+ * rather than logged.
+ *
+ * While {@link JfrEvents} is enabled and a flight recording is running each
+ * logged event is also a JFR event.
  */
 public final class CommonLogger {
 
-    private org.apache.log4j.Logger logger;
+    // constants
+    private static final String FQCN = CommonLogger.class.getName();
+    private static final ConcurrentMap<String, CommonLogger> LOGGERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Parameters> PARAMETERS = ThreadLocal.withInitial(Parameters::new);
+    // shared
+    private static volatile AsyncLogDispatcher dispatcher;
+    private static volatile LoggingMetrics measuring;
+    private static volatile boolean tracing; // whether JFR events are wanted
+    private static volatile FlightRecorder recorder;
+    private static volatile LogBackend backend = Log4jBackend.INSTANCE;
+
+    static {
+        LogManager.getLoggerRepository().addHierarchyEventListener(new HierarchyEventListener() {
+            @Override
+            public void addAppenderEvent(Category category, Appender appender) {
+                refreshLevels();
+            }
+
+            @Override
+            public void removeAppenderEvent(Category category, Appender appender) {
+                refreshLevels();
+            }
+        });
+    }
+
+    private final org.apache.log4j.Logger logger;
+    private volatile int threshold; // the lowest level logged or recorded
+    private volatile int enabled; // the lowest level logged
+    private volatile LogLimiter limiter;
+    private volatile boolean screened; // whether a limiter, recorder, dispatcher, metrics or tracing is installed
+    private volatile LoggerMetrics metrics; // while LoggingMetrics is enabled
 
     public static CommonLogger getLogger(String name) {
-        return new CommonLogger(org.apache.log4j.Logger.getLogger(name));
+        CommonLogger logger = LOGGERS.get(name);
+        if (logger == null) {
+            CommonLogger created = new CommonLogger(org.apache.log4j.Logger.getLogger(name));
+            logger = LOGGERS.putIfAbsent(name, created);
+            if (logger == null) {
+                logger = created;
+                // catch a refresh that happened while this instance was being added
+                logger.refreshLevel();
+            }
+        }
+        return logger;
     }
 
     public static CommonLogger getLogger(Class<?> clazz) {
         return getLogger(clazz.getName());
     }
 
+    /**
+     * Send the events of all loggers through the given dispatcher, or, when
+     * null, append them on the calling thread. Returns the dispatcher that was
+     * replaced, which the caller should close.
+     */
+    public static AsyncLogDispatcher setDispatcher(AsyncLogDispatcher dispatcher) {
+        AsyncLogDispatcher replaced = CommonLogger.dispatcher;
+        CommonLogger.dispatcher = dispatcher;
+        refreshLevels();
+        return replaced;
+    }
+
+    public static AsyncLogDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Measure the events of all loggers with the given metrics, or, when
+     * null, stop measuring. See {@link LoggingMetrics#enable()}.
+     */
+    static void setMetrics(LoggingMetrics metrics) {
+        measuring = metrics;
+        refreshLevels();
+    }
+
+    /**
+     * Emit, or stop emitting, JFR events for the events of all loggers. See
+     * {@link JfrEvents#enable()}.
+     */
+    static void setTracing(boolean tracing) {
+        if (CommonLogger.tracing != tracing) {
+            CommonLogger.tracing = tracing;
+            refreshLevels();
+        }
+    }
+
+    static boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Record the events of all loggers that are below their level, down to the
+     * recorder's level, or, when null, do not record. Returns the recorder that
+     * was replaced. See {@link FlightRecorder}.
+     */
+    public static FlightRecorder setRecorder(FlightRecorder recorder) {
+        FlightRecorder replaced = CommonLogger.recorder;
+        CommonLogger.recorder = recorder;
+        refreshLevels();
+        return replaced;
+    }
+
+    public static FlightRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Send the enabled events of all loggers to the given backend, or, when
+     * null, to Log4j's appenders. Returns the backend that was replaced,
+     * which the caller should close if need be.
+     */
+    public static LogBackend setBackend(LogBackend backend) {
+        LogBackend replaced = CommonLogger.backend;
+        CommonLogger.backend = backend != null ? backend : Log4jBackend.INSTANCE;
+        return replaced;
+    }
+
+    public static LogBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Refresh every instance's cached level from Log4j.
+     */
+    public static void refreshLevels() {
+        for (CommonLogger logger : LOGGERS.values()) {
+            logger.refreshLevel();
+        }
+    }
+
+    /**
+     * Configure Log4j from the properties, as PropertyConfigurator does, and
+     * refresh the cached levels.
+     */
+    public static void configure(Properties properties) {
+        PropertyConfigurator.configure(properties);
+        refreshLevels();
+    }
+
+    /**
+     * Configure Log4j from the properties or, when its name ends with ".xml",
+     * XML file, and refresh the cached levels.
+     */
+    public static void configure(URL configuration) {
+        OptionConverter.selectAndConfigure(configuration, null, LogManager.getLoggerRepository());
+        refreshLevels();
+    }
+
+    /**
+     * Configure Log4j from the file, as {@link #configure(URL)} does, and
+     * reconfigure it whenever the file changes, checking every delay
+     * milliseconds. Use instead of PropertyConfigurator's and
+     * DOMConfigurator's configureAndWatch(), which do not refresh the cached
+     * levels.
+     */
+    public static void configureAndWatch(String file, long delay) {
+        ConfigurationWatchdog watchdog = new ConfigurationWatchdog(file);
+        watchdog.setDelay(delay);
+        watchdog.start();
+    }
+
+    /**
+     * Limit how often this logger logs events with the same pattern, or, when
+     * null, do not limit. See {@link LogLimiter}.
+     */
+    public void setLimiter(LogLimiter limiter) {
+        this.limiter = limiter;
+        refreshLevel();
+    }
+
+    public LogLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Start a structured event at the level. See {@link StructuredEvent}.
+     */
+    public StructuredEvent at(Level level) {
+        return level.toInt() >= enabled ? StructuredEvent.acquire(this, level) : StructuredEvent.DISABLED;
+    }
+
+    public StructuredEvent atDebug() {
+        return at(Level.DEBUG);
+    }
+
+    public StructuredEvent atTrace() {
+        return at(Level.TRACE);
+    }
+
+    public StructuredEvent atInfo() {
+        return at(Level.INFO);
+    }
+
+    public StructuredEvent atWarn() {
+        return at(Level.WARN);
+    }
+
+    public StructuredEvent atError() {
+        return at(Level.ERROR);
+    }
+
+    public StructuredEvent atFatal() {
+        return at(Level.FATAL);
+    }
+
     private CommonLogger(org.apache.log4j.Logger logger) {
         this.logger = logger;
+        refreshLevel();
+    }
+
+    /**
+     * Recompute the cached levels. Synchronized so that two refreshes, eg one
+     * for a new recorder and one for a reconfiguration, do not interleave
+     * their writes and leave the logger unscreened with the recorder's
+     * threshold. The logging methods only read the volatile fields.
+     */
+    private synchronized void refreshLevel() {
+        int effective = logger.getEffectiveLevel().toInt();
+        int disabled = logger.getLoggerRepository().getThreshold().toInt();
+        int logged = Math.max(effective, disabled);
+        FlightRecorder r = recorder;
+        int lowest = r != null ? Math.min(logged, r.getLevel().toInt()) : logged;
+        boolean screen = r != null || limiter != null || dispatcher != null || measuring != null || tracing;
+        enabled = logged;
+        // events below the logger's level pass the threshold only while screened
+        if (screen) {
+            screened = true;
+            threshold = lowest;
+        }
+        else {
+            threshold = lowest;
+            screened = false;
+        }
     }
 
     public boolean isDebugEnabled() {
-        return logger.isDebugEnabled();
+        return Level.DEBUG_INT >= enabled;
     }
 
     public void debug(String messageFormat, Object... messageParameters) {
-        if (Level.DEBUG.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.debug(format(messageFormat, messageParameters));
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void debug(String messageFormat) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 0, null, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Object p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Object p0, Object p1) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void debug(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void debug(String messageFormat, int p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, long p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, double p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, boolean p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, char p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Supplier<?> p0) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void debug(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void debug(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void debug(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void debug(Supplier<String> message) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, null, message);
+        }
+    }
+
+    public void debug(Throwable cause, Supplier<String> message) {
+        if (Level.DEBUG_INT >= threshold) {
+            logSupplied(Level.DEBUG, cause, message);
         }
     }
 
     public void debug(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.DEBUG.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.debug(format(messageFormat, messageParameters), cause);
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void debug(FormattedMessage message) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, null, message);
+        }
+    }
+
+    public void debug(Throwable cause, FormattedMessage message) {
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, cause, message);
         }
     }
 
     public void debug(Throwable cause) {
-        if (Level.DEBUG.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.debug(cause.getLocalizedMessage(), cause);
+        if (Level.DEBUG_INT >= threshold) {
+            log(Level.DEBUG, cause, cause.getLocalizedMessage());
         }
     }
 
     public boolean isTraceEnabled() {
-        return logger.isTraceEnabled();
+        return Level.TRACE_INT >= enabled;
     }
 
     public void trace(String messageFormat, Object... messageParameters) {
-        if (Level.TRACE.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.trace(format(messageFormat, messageParameters));
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void trace(String messageFormat) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 0, null, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Object p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Object p0, Object p1) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void trace(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void trace(String messageFormat, int p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, long p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, double p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, boolean p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, char p0) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Supplier<?> p0) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void trace(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void trace(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void trace(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void trace(Supplier<String> message) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, null, message);
+        }
+    }
+
+    public void trace(Throwable cause, Supplier<String> message) {
+        if (Level.TRACE_INT >= threshold) {
+            logSupplied(Level.TRACE, cause, message);
         }
     }
 
     public void trace(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.TRACE.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.trace(format(messageFormat, messageParameters), cause);
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void trace(FormattedMessage message) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, null, message);
+        }
+    }
+
+    public void trace(Throwable cause, FormattedMessage message) {
+        if (Level.TRACE_INT >= threshold) {
+            log(Level.TRACE, cause, message);
         }
     }
 
     public void info(String messageFormat, Object... messageParameters) {
-        if (Level.INFO.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.info(format(messageFormat, messageParameters));
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void info(String messageFormat) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 0, null, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Object p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Object p0, Object p1) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void info(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void info(String messageFormat, int p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, long p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, double p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, boolean p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, char p0) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Supplier<?> p0) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void info(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void info(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void info(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void info(Supplier<String> message) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, null, message);
+        }
+    }
+
+    public void info(Throwable cause, Supplier<String> message) {
+        if (Level.INFO_INT >= threshold) {
+            logSupplied(Level.INFO, cause, message);
         }
     }
 
     public void info(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.INFO.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.info(format(messageFormat, messageParameters), cause);
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void info(FormattedMessage message) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, null, message);
+        }
+    }
+
+    public void info(Throwable cause, FormattedMessage message) {
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, cause, message);
         }
     }
 
     public void info(Throwable cause) {
-        if (Level.INFO.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.info(cause.getLocalizedMessage(), cause);
+        if (Level.INFO_INT >= threshold) {
+            log(Level.INFO, cause, cause.getLocalizedMessage());
         }
     }
 
     public void warn(String messageFormat, Object... messageParameters) {
-        if (Level.WARN.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.warn(format(messageFormat, messageParameters));
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, null, messageFormat, messageParameters);
         }
     }
 
-    public void warn(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.WARN.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.warn(format(messageFormat, messageParameters), cause);
+    public void warn(String messageFormat) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 0, null, null, null, null);
         }
     }
 
-    public void warn(Throwable cause) {
-        if (Level.WARN.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.warn(cause.getLocalizedMessage(), cause);
+    public void warn(String messageFormat, Object p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
         }
     }
 
-    public void error(String messageFormat, Object... messageParameters) {
-        if (Level.ERROR.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.error(format(messageFormat, messageParameters));
+    public void warn(String messageFormat, Object p0, Object p1) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 2, p0, p1, null, null);
         }
     }
 
-    public void error(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.ERROR.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.error(format(messageFormat, messageParameters), cause);
+    public void warn(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 3, p0, p1, p2, null);
         }
     }
 
-    public void error(Throwable cause) {
-        if (Level.ERROR.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.error(cause.getLocalizedMessage(), cause);
+    public void warn(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 4, p0, p1, p2, p3);
         }
     }
 
-    public void fatal(String messageFormat, Object... messageParameters) {
-        if (Level.FATAL.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.fatal(format(messageFormat, messageParameters));
+    public void warn(String messageFormat, int p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
         }
     }
 
-    public void fatal(Throwable cause, String messageFormat, Object... messageParameters) {
-        if (Level.FATAL.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.fatal(format(messageFormat, messageParameters), cause);
+    public void warn(String messageFormat, long p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
         }
     }
 
-    public void fatal(Throwable cause) {
-        if (Level.FATAL.isGreaterOrEqual(logger.getEffectiveLevel())) {
-            logger.fatal(cause.getMessage(), cause);
+    public void warn(String messageFormat, double p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
         }
     }
 
-    protected String format(String messageFormat, Object[] messageParameters) {
-        // String message = MessageFormat.format(messageFormat, messageParameters);
-        String message = SimpleMessageFormat.format(messageFormat,messageParameters);
-        return message;
+    public void warn(String messageFormat, boolean p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void warn(String messageFormat, char p0) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void warn(String messageFormat, Supplier<?> p0) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void warn(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void warn(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void warn(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void warn(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void warn(Supplier<String> message) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, null, message);
+        }
+    }
+
+    public void warn(Throwable cause, Supplier<String> message) {
+        if (Level.WARN_INT >= threshold) {
+            logSupplied(Level.WARN, cause, message);
+        }
+    }
+
+    public void warn(Throwable cause, String messageFormat, Object... messageParameters) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void warn(FormattedMessage message) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, null, message);
+        }
+    }
+
+    public void warn(Throwable cause, FormattedMessage message) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, cause, message);
+        }
+    }
+
+    public void warn(Throwable cause) {
+        if (Level.WARN_INT >= threshold) {
+            log(Level.WARN, cause, cause.getLocalizedMessage());
+        }
+    }
+
+    public void error(String messageFormat, Object... messageParameters) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void error(String messageFormat) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 0, null, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Object p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Object p0, Object p1) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void error(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void error(String messageFormat, int p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, long p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, double p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, boolean p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, char p0) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Supplier<?> p0) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void error(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void error(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void error(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void error(Supplier<String> message) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, null, message);
+        }
+    }
+
+    public void error(Throwable cause, Supplier<String> message) {
+        if (Level.ERROR_INT >= threshold) {
+            logSupplied(Level.ERROR, cause, message);
+        }
+    }
+
+    public void error(Throwable cause, String messageFormat, Object... messageParameters) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void error(FormattedMessage message) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, null, message);
+        }
+    }
+
+    public void error(Throwable cause, FormattedMessage message) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, cause, message);
+        }
+    }
+
+    public void error(Throwable cause) {
+        if (Level.ERROR_INT >= threshold) {
+            log(Level.ERROR, cause, cause.getLocalizedMessage());
+        }
+    }
+
+    public void fatal(String messageFormat, Object... messageParameters) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void fatal(String messageFormat) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 0, null, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Object p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Object p0, Object p1) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Object p0, Object p1, Object p2) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Object p0, Object p1, Object p2, Object p3) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void fatal(String messageFormat, int p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, long p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, double p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, boolean p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, char p0) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Supplier<?> p0) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, messageFormat, 1, p0, null, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Supplier<?> p0, Supplier<?> p1) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, messageFormat, 3, p0, p1, p2, null);
+        }
+    }
+
+    public void fatal(String messageFormat, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, messageFormat, 4, p0, p1, p2, p3);
+        }
+    }
+
+    public void fatal(String messageFormat, Supplier<?>... messageParameters) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, null, messageFormat, messageParameters);
+        }
+    }
+
+    public void fatal(Supplier<String> message) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, null, message);
+        }
+    }
+
+    public void fatal(Throwable cause, Supplier<String> message) {
+        if (Level.FATAL_INT >= threshold) {
+            logSupplied(Level.FATAL, cause, message);
+        }
+    }
+
+    public void fatal(Throwable cause, String messageFormat, Object... messageParameters) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, cause, messageFormat, messageParameters);
+        }
+    }
+
+    public void fatal(FormattedMessage message) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, null, message);
+        }
+    }
+
+    public void fatal(Throwable cause, FormattedMessage message) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, cause, message);
+        }
+    }
+
+    public void fatal(Throwable cause) {
+        if (Level.FATAL_INT >= threshold) {
+            log(Level.FATAL, cause, cause.getMessage());
+        }
+    }
+
+    private void log(Level level, Throwable cause, String messageFormat, Object[] messageParameters) {
+        if (screened && !admit(level, cause, messageFormat, messageParameters)) {
+            return;
+        }
+        AsyncLogDispatcher d = dispatcher;
+        if (d != null) {
+            published(level, d.publish(logger, level, cause, messageFormat, messageParameters, null));
+        }
+        else if (measuring != null || tracing) {
+            logMeasured(level, cause, messageFormat, messageParameters);
+        }
+        else {
+            emit(level, format(messageFormat, messageParameters), cause);
+        }
+    }
+
+    private void log(Level level, String messageFormat, int count, Object p0, Object p1, Object p2, Object p3) {
+        if (screened) {
+            if (admit(level, messageFormat, count, p0, p1, p2, p3)) {
+                append(level, messageFormat, count, p0, p1, p2, p3);
+            }
+            return;
+        }
+        backend.append(logger, level, new Message(messageFormat, count, p0, p1, p2, p3), null);
+    }
+
+    private void log(Level level, Throwable cause, Object message) {
+        if (screened && !admit(level, cause, message)) {
+            return;
+        }
+        AsyncLogDispatcher d = dispatcher;
+        if (d != null) {
+            published(level, d.publish(logger, level, cause, null, null, message));
+        }
+        else if (measuring != null || tracing) {
+            logMeasured(level, cause, message);
+        }
+        else {
+            emit(level, message, cause);
+        }
+    }
+
+    /**
+     * Log a structured event's message.
+     */
+    void log(Level level, Throwable cause, StructuredMessage message) {
+        log(level, cause, (Object) message);
+    }
+
+    /**
+     * Log a limiter's summary of suppressed events, bypassing the limiter.
+     */
+    void summarize(Level level, String messageFormat, Object p0, Object p1) {
+        if (level.toInt() >= enabled) {
+            append(level, messageFormat, 2, p0, p1, null, null);
+        }
+    }
+
+    /**
+     * Log the first count of the given parameters. Unless the event is queued
+     * the message is formatted only if an appender renders it.
+     */
+    private void append(Level level, String messageFormat, int count, Object p0, Object p1, Object p2, Object p3) {
+        AsyncLogDispatcher d = dispatcher;
+        if (d != null) {
+            Object[] messageParameters = new Object[count];
+            Message.fill(messageParameters, p0, p1, p2, p3);
+            published(level, d.publish(logger, level, null, messageFormat, messageParameters, null));
+        }
+        else if (measuring != null || tracing) {
+            appendMeasured(level, messageFormat, count, p0, p1, p2, p3);
+        }
+        else {
+            emit(level, new Message(messageFormat, count, p0, p1, p2, p3), null);
+        }
+    }
+
+    // The measured, and traced, variants of the synchronous paths are kept
+    // apart so that the unmeasured paths stay small enough for the JIT to
+    // inline and so to eliminate their unrendered Message. Measuring may stop
+    // in between.
+
+    private void logMeasured(Level level, Throwable cause, String messageFormat, Object[] messageParameters) {
+        LoggerMetrics m = metrics();
+        Object e = traced();
+        if (m == null && e == null) {
+            emit(level, format(messageFormat, messageParameters), cause);
+            return;
+        }
+        if (m != null) {
+            m.event(level);
+        }
+        long t0 = System.nanoTime();
+        String message = format(messageFormat, messageParameters);
+        long t1 = System.nanoTime();
+        emit(level, message, cause);
+        if (m != null) {
+            m.formatted(level, message.length(), t1 - t0);
+            m.appended(level, System.nanoTime() - t1);
+        }
+        if (e != null) {
+            JfrEvents.commit(e, logger, level, messageFormat, message);
+        }
+    }
+
+    private void logMeasured(Level level, Throwable cause, Object message) {
+        LoggerMetrics m = metrics();
+        Object e = traced();
+        if (m == null && e == null) {
+            emit(level, message, cause);
+            return;
+        }
+        if (m != null) {
+            m.event(level);
+        }
+        long t0 = System.nanoTime();
+        emit(level, message, cause);
+        if (m != null) {
+            m.appended(level, System.nanoTime() - t0);
+        }
+        if (e != null) {
+            JfrEvents.commit(e, logger, level, null, message);
+        }
+    }
+
+    private void appendMeasured(Level level, String messageFormat, int count, Object p0, Object p1, Object p2, Object p3) {
+        LoggerMetrics m = metrics();
+        Object e = traced();
+        Message message = new Message(messageFormat, count, p0, p1, p2, p3);
+        if (m == null && e == null) {
+            emit(level, message, null);
+            return;
+        }
+        message.metrics = m;
+        message.level = level;
+        if (m != null) {
+            m.event(level);
+        }
+        long t0 = System.nanoTime();
+        emit(level, message, null);
+        if (m != null) {
+            m.appended(level, System.nanoTime() - t0);
+        }
+        if (e != null) {
+            JfrEvents.commit(e, logger, level, messageFormat, message);
+        }
+    }
+
+    /**
+     * Returns a begun JFR event, or null if not tracing.
+     */
+    private static Object traced() {
+        return tracing ? JfrEvents.begin() : null;
+    }
+
+    // Events pass the level check below the logger's level only while a
+    // recorder is installed, and so, like the limiter, the recorder is only
+    // consulted when the logger is screened. Unscreened events with up to four
+    // parameters skip the dispatcher and metrics checks too.
+
+    private boolean admit(Level level, Throwable cause, String messageFormat, Object[] messageParameters) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.record(logger, level, cause, messageFormat, messageParameters);
+            }
+            return false;
+        }
+        return admit(level, messageFormat);
+    }
+
+    private boolean admit(Level level, String messageFormat, int count, Object p0, Object p1, Object p2, Object p3) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.record(logger, level, messageFormat, count, p0, p1, p2, p3);
+            }
+            return false;
+        }
+        return admit(level, messageFormat);
+    }
+
+    private boolean admit(Level level, Throwable cause, Object message) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.record(logger, level, cause, message);
+            }
+            return false;
+        }
+        return admit(level, limiterKey(cause, message));
+    }
+
+    /**
+     * Returns whether the limiter allows the event. Before an allowed ERROR or
+     * FATAL event the recorder's events are replayed.
+     */
+    private boolean admit(Level level, String limiterKey) {
+        LogLimiter l = limiter;
+        if (l != null && !l.allow(this, level, limiterKey)) {
+            dropped(level);
+            return false;
+        }
+        FlightRecorder r = recorder;
+        if (r != null && level.toInt() >= Level.ERROR_INT) {
+            r.replay();
+        }
+        return true;
+    }
+
+    private void emit(Level level, Object message, Throwable cause) {
+        backend.append(logger, level, message, cause);
+    }
+
+    private void dropped(Level level) {
+        LoggerMetrics m = metrics();
+        if (m != null) {
+            m.drop(level);
+        }
+    }
+
+    private void published(Level level, boolean queued) {
+        LoggerMetrics m = metrics();
+        if (m != null) {
+            if (queued) {
+                m.event(level);
+            }
+            else {
+                m.drop(level);
+            }
+        }
+    }
+
+    /**
+     * Returns this logger's metrics, or null if LoggingMetrics is not enabled.
+     * While enabled the result is never null.
+     */
+    private LoggerMetrics metrics() {
+        LoggingMetrics owner = measuring;
+        if (owner == null) {
+            return null;
+        }
+        LoggerMetrics m = metrics;
+        if (m == null || m.getOwner() != owner) {
+            metrics = m = owner.forLogger(logger.getName());
+        }
+        return m;
+    }
+
+    /**
+     * Log the suppliers' values or, if the level is only recorded, record
+     * the suppliers without calling them.
+     */
+    private void logSupplied(Level level, String messageFormat, int count, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.recordSupplied(logger, level, messageFormat, count, p0, p1, p2, p3);
+            }
+            return;
+        }
+        log(level, messageFormat, count, get(p0), get(p1), get(p2), get(p3));
+    }
+
+    private void logSupplied(Level level, Throwable cause, String messageFormat, Supplier<?>[] messageParameters) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.recordSupplied(logger, level, cause, messageFormat, messageParameters);
+            }
+            return;
+        }
+        log(level, cause, messageFormat, get(messageParameters));
+    }
+
+    private void logSupplied(Level level, Throwable cause, Supplier<String> message) {
+        if (level.toInt() < enabled) {
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.recordSupplied(logger, level, cause, message);
+            }
+            return;
+        }
+        log(level, cause, message.get());
+    }
+
+    static Object get(Supplier<?> supplier) {
+        return supplier != null ? supplier.get() : null;
+    }
+
+    private static Object[] get(Supplier<?>[] suppliers) {
+        if (suppliers == null) {
+            return null;
+        }
+        Object[] values = new Object[suppliers.length];
+        for (int i = 0; i < suppliers.length; i++) {
+            values[i] = get(suppliers[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns what a message without a pattern is limited by: a formatted
+     * message's pattern or the cause's class. Otherwise the message is not
+     * limited, as its text, eg, from a supplier, may differ every time.
+     */
+    private static String limiterKey(Throwable cause, Object message) {
+        if (message instanceof FormattedMessage) {
+            return ((FormattedMessage) message).getPattern();
+        }
+        if (message instanceof StructuredMessage) {
+            return ((StructuredMessage) message).getPattern();
+        }
+        if (cause != null) {
+            return cause.getClass().getName();
+        }
+        return null;
+    }
+
+    protected String format(String messageFormat, Object[] messageParameters) {
+        // String message = MessageFormat.format(messageFormat, messageParameters);
+        String message = render(messageFormat, messageParameters);
+        return message;
+    }
+
+    /**
+     * Returns the formatted message or, if the pattern is misformed, the
+     * pattern itself. Every path renders a misformed pattern this way rather
+     * than throwing into the caller or dropping the event.
+     */
+    static String render(String messageFormat, Object[] messageParameters) {
+        try {
+            return SimpleMessageFormat.format(messageFormat, messageParameters);
+        }
+        catch (IllegalArgumentException e) {
+            LogLog.error("unable to format message: pattern=" + messageFormat, e);
+            return messageFormat;
+        }
+    }
+
+    /**
+     * A message pattern and up to four parameters, held in fields so that,
+     * when no appender renders the message and the JIT can see that, the
+     * message is never allocated. When rendered the parameters are formatted
+     * from a reused per-thread array. Like {@link FormattedMessage} the
+     * formatted text is remembered and a misformed pattern renders as itself.
+     */
+    static final class Message {
+
+        private final String pattern;
+        private final int count;
+        private final Object p0;
+        private final Object p1;
+        private final Object p2;
+        private final Object p3;
+        private LoggerMetrics metrics; // measures the formatting, if set
+        private Level level;
+        private String text;
+
+        Message(String pattern, int count, Object p0, Object p1, Object p2, Object p3) {
+            this.pattern = pattern;
+            this.count = count;
+            this.p0 = p0;
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        Object getParameter(int index) {
+            switch (index) {
+                case 0:
+                    return p0;
+                case 1:
+                    return p1;
+                case 2:
+                    return p2;
+                case 3:
+                    return p3;
+                default:
+                    throw new IndexOutOfBoundsException("no parameter: index=" + index);
+            }
+        }
+
+        /**
+         * Returns the formatted text, or null if not yet formatted.
+         */
+        String getText() {
+            return text;
+        }
+
+        static void fill(Object[] parameters, Object p0, Object p1, Object p2, Object p3) {
+            int n = parameters.length;
+            if (n > 0) {
+                parameters[0] = p0;
+            }
+            if (n > 1) {
+                parameters[1] = p1;
+            }
+            if (n > 2) {
+                parameters[2] = p2;
+            }
+            if (n > 3) {
+                parameters[3] = p3;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String t = text;
+            if (t == null) {
+                long t0 = metrics != null ? System.nanoTime() : 0;
+                Parameters parameters = PARAMETERS.get();
+                Object[] messageParameters = parameters.acquire(count);
+                try {
+                    fill(messageParameters, p0, p1, p2, p3);
+                    t = render(pattern, messageParameters);
+                }
+                finally {
+                    parameters.release(messageParameters);
+                }
+                text = t;
+                if (metrics != null) {
+                    metrics.formatted(level, t.length(), System.nanoTime() - t0);
+                }
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Reusable parameter arrays, one per count. An array is only lent once at
+     * a time and so a message formatted while formatting another, eg from an
+     * argument's toString(), is given a new array.
+     */
+    private static final class Parameters {
+
+        private final Object[][] arrays = {new Object[0], new Object[1], new Object[2], new Object[3], new Object[4]};
+        private final boolean[] inUse = new boolean[arrays.length];
+
+        Object[] acquire(int count) {
+            if (inUse[count]) {
+                return new Object[count];
+            }
+            inUse[count] = true;
+            return arrays[count];
+        }
+
+        void release(Object[] parameters) {
+            int count = parameters.length;
+            if (arrays[count] == parameters) {
+                Arrays.fill(parameters, null);
+                inUse[count] = false;
+            }
+        }
+    }
+
+    /**
+     * Reconfigures Log4j when the configuration file changes.
+     */
+    private static final class ConfigurationWatchdog extends FileWatchdog {
+
+        ConfigurationWatchdog(String file) {
+            super(file);
+        }
+
+        @Override
+        protected void doOnChange() {
+            try {
+                configure(new File(filename).toURI().toURL());
+            }
+            catch (MalformedURLException e) {
+                LogLog.error("unable to configure from " + filename, e);
+            }
+        }
     }
 }
 
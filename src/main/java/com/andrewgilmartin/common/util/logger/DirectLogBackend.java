@@ -0,0 +1,368 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A {@link LogBackend} that writes events, by default as JSON lines, see
+ * {@link JsonLinesEncoder}, to a channel without taking a lock. Each thread
+ * encodes its events into its own ring of bytes, its lane. A background
+ * thread gathers the waiting bytes of every lane and writes them with one
+ * gathering write. No thread waits on another unless its lane is full.
+ *
+ * Events of one thread are written in order. Events of different threads are
+ * written in the order their lanes are gathered and so may be out of time
+ * order by up to the writer's cycle.
+ *
+ * Install with {@link CommonLogger#setBackend(LogBackend)}.
+ */
+public final class DirectLogBackend implements LogBackend, AutoCloseable {
+
+    // constants
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // configured
+    private final GatheringByteChannel channel;
+    private final boolean ownsChannel;
+    private final int laneCapacity;
+    private final LogEncoder encoder;
+    // state
+    private final Set<Lane> lanes = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lane> lane = ThreadLocal.withInitial(this::newLane);
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private boolean drained; // guarded by this
+    private final Thread writer;
+    private final List<Lane> gathered = new ArrayList<>(); // used by the writer, then by close()
+    private ByteBuffer[] buffers = new ByteBuffer[16];
+    // metrics
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * Create and start a backend writing to the channel with lanes of the
+     * given number of bytes. An event larger than a lane is dropped. The
+     * channel is closed with the backend if owned.
+     */
+    public DirectLogBackend(GatheringByteChannel channel, boolean ownsChannel, int laneCapacity) {
+        this(channel, ownsChannel, laneCapacity, new JsonLinesEncoder(8, 100));
+    }
+
+    /**
+     * Create and start a backend writing events encoded by the encoder. The
+     * encoder is only called by the thread whose event it is.
+     */
+    public DirectLogBackend(GatheringByteChannel channel, boolean ownsChannel, int laneCapacity, LogEncoder encoder) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.laneCapacity = laneCapacity;
+        this.encoder = encoder;
+        this.writer = new Thread(this::write, "CommonLogger-direct");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Returns a backend appending to the file, which is created if need be.
+     */
+    public static DirectLogBackend toFile(Path file, int laneCapacity) throws IOException {
+        return toFile(file, laneCapacity, new JsonLinesEncoder(8, 100));
+    }
+
+    /**
+     * Returns a backend appending events encoded by the encoder to the file,
+     * which is created if need be.
+     */
+    public static DirectLogBackend toFile(Path file, int laneCapacity, LogEncoder encoder) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new DirectLogBackend(channel, true, laneCapacity, encoder);
+    }
+
+    /**
+     * Returns a backend writing to the process's standard output.
+     */
+    @SuppressWarnings("resource")
+    public static DirectLogBackend toStandardOutput(int laneCapacity) {
+        return new DirectLogBackend(new FileOutputStream(FileDescriptor.out).getChannel(), false, laneCapacity);
+    }
+
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    /**
+     * Returns the number of events dropped because they were larger than a
+     * lane or arrived after close.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @Override
+    public void append(Logger logger, Level level, Object message, Throwable cause) {
+        Lane l = lane.get();
+        ((Buffer) l.scratch).clear();
+        l.scratch = encoder.encode(l.scratch, System.currentTimeMillis(), level, logger.getName(), Thread.currentThread().getName(), message, cause);
+        if (put(l)) {
+            encoder.commit();
+        }
+    }
+
+    @Override
+    public void append(LoggingEvent event) {
+        Lane l = lane.get();
+        ((Buffer) l.scratch).clear();
+        l.scratch = encoder.encode(l.scratch, event);
+        if (put(l)) {
+            encoder.commit();
+        }
+    }
+
+    /**
+     * Wait until every event appended before this call has been written or
+     * the timeout has passed. Returns false on timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane l : lanes) {
+            long target = l.published;
+            while (l.consumed < target) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, FULL_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting events, write those already appended, and stop the
+     * background thread. Events a thread was publishing as the writer
+     * stopped are written here, and those published later are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        boolean stopped = false;
+        try {
+            writer.join();
+            stopped = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (stopped && !drained) {
+                while (writeLanes() > 0) {
+                    // until no lane has bytes waiting
+                }
+                drained = true;
+            }
+        }
+        if (ownsChannel) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                LogLog.error("unable to close channel", e);
+            }
+        }
+    }
+
+    /**
+     * Copy the lane's encoded event into its ring, waiting for room. Returns
+     * false if the event was dropped.
+     */
+    private boolean put(Lane l) {
+        ByteBuffer event = l.scratch;
+        ((Buffer) event).flip();
+        int length = event.remaining();
+        if (length > laneCapacity) {
+            dropped.increment();
+            return false;
+        }
+        long published = l.published;
+        while (laneCapacity - (published - l.consumed) < length) {
+            if (!running) {
+                dropped.increment();
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_NANOS);
+        }
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        int offset = (int) (published % laneCapacity);
+        int first = Math.min(length, laneCapacity - offset);
+        System.arraycopy(event.array(), event.arrayOffset() + event.position(), l.ring, offset, first);
+        System.arraycopy(event.array(), event.arrayOffset() + event.position() + first, l.ring, 0, length - first);
+        l.published = published + length;
+        if (!running) {
+            return !retract(l, published);
+        }
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Take back the event published while the backend closed if close()
+     * drained the lanes before it was published, and so it will never be
+     * written. Returns whether it was taken back.
+     */
+    private synchronized boolean retract(Lane l, long published) {
+        if (drained && l.consumed < l.published) {
+            l.published = published;
+            dropped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void write() {
+        for (;;) {
+            boolean stopping = !running;
+            if (writeLanes() > 0) {
+                continue;
+            }
+            if (stopping) {
+                return;
+            }
+            idle = true;
+            if (running) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            idle = false;
+        }
+    }
+
+    /**
+     * Gather the waiting bytes of every lane and write them. Returns the
+     * number of buffers written.
+     */
+    private int writeLanes() {
+        gathered.clear();
+        int count = 0;
+        for (Lane l : lanes) {
+            long published = l.published;
+            long consumed = l.consumed;
+            if (published == consumed) {
+                if (l.isDead()) {
+                    lanes.remove(l);
+                }
+                continue;
+            }
+            if (count + 2 > buffers.length) {
+                ByteBuffer[] grown = new ByteBuffer[buffers.length * 2];
+                System.arraycopy(buffers, 0, grown, 0, count);
+                buffers = grown;
+            }
+            int offset = (int) (consumed % laneCapacity);
+            int length = (int) (published - consumed);
+            int first = Math.min(length, laneCapacity - offset);
+            buffers[count++] = l.slice(l.head, offset, first);
+            if (first < length) {
+                buffers[count++] = l.slice(l.tail, 0, length - first);
+            }
+            l.gathered = published;
+            gathered.add(l);
+        }
+        if (count > 0) {
+            try {
+                long remaining = 0;
+                for (int i = 0; i < count; i++) {
+                    remaining += buffers[i].remaining();
+                }
+                while (remaining > 0) {
+                    long n = channel.write(buffers, 0, count);
+                    remaining -= n;
+                    written.add(n);
+                }
+            }
+            catch (IOException e) {
+                LogLog.error("unable to write events", e);
+            }
+            for (Lane l : gathered) {
+                l.consumed = l.gathered;
+            }
+        }
+        return count;
+    }
+
+    private Lane newLane() {
+        Lane l = new Lane(Thread.currentThread(), laneCapacity);
+        lanes.add(l);
+        return l;
+    }
+
+    /**
+     * One thread's ring. Only the owning thread changes published and only
+     * the writer, or close() once the writer has stopped, advances consumed.
+     */
+    private static final class Lane {
+
+        final WeakReference<Thread> thread;
+        final byte[] ring;
+        final ByteBuffer head; // the writer's views of the ring
+        final ByteBuffer tail;
+        ByteBuffer scratch = ByteBuffer.allocate(512);
+        long gathered;
+        volatile long published;
+        volatile long consumed;
+
+        Lane(Thread thread, int capacity) {
+            this.thread = new WeakReference<>(thread);
+            this.ring = new byte[capacity];
+            this.head = ByteBuffer.wrap(ring);
+            this.tail = ByteBuffer.wrap(ring);
+        }
+
+        ByteBuffer slice(ByteBuffer view, int offset, int length) {
+            ((Buffer) view).limit(offset + length);
+            ((Buffer) view).position(offset);
+            return view;
+        }
+
+        boolean isDead() {
+            Thread t = thread.get();
+            return t == null || !t.isAlive();
+        }
+    }
+}
+
+// END
@@ -0,0 +1,293 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.lang.ref.WeakReference;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ * Records the {@link CommonLogger} events that are below their logger's
+ * level, down to the recorder's level, eg, DEBUG and TRACE, so that they can
+ * be seen when something goes wrong. Each thread records into its own ring of
+ * preallocated slots holding the raw pattern and parameters, and so recording
+ * does not contend and does not format. When the thread logs an ERROR or
+ * FATAL event its recorded events are first appended, as they would have
+ * been had their level been enabled, and forgotten. {@link #dump()} formats
+ * the recorded events of all threads on demand.
+ *
+ * Recorded parameters are retained until their slot is reused and are
+ * formatted with their values at the time of the dump. The suppliers of the
+ * Supplier overloads are recorded uncalled and are called only when the
+ * event is replayed, or each time it is dumped, by the thread doing so.
+ * Dumping another thread's ring is best effort and skips a slot being
+ * overwritten.
+ */
+public final class FlightRecorder {
+
+    // constants
+    private static final String FQCN = CommonLogger.class.getName();
+    private static final String DUMP_LINE = "{0} {1} [{2}] {3} - {4}\n";
+    // configured
+    private final int capacity;
+    private final Level level;
+    // state
+    private final Set<Ring> rings = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Ring> ring = ThreadLocal.withInitial(this::newRing);
+
+    /**
+     * Record, per thread, the last capacity events at or above the level that
+     * their logger does not log.
+     */
+    public FlightRecorder(int capacity, Level level) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: capacity=" + capacity);
+        }
+        this.capacity = capacity;
+        this.level = level;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    void record(Logger logger, Level level, Throwable cause, String pattern, Object[] parameters) {
+        ring.get().next(logger, level, cause, pattern, parameters, 0, null, null, null, null, null, false);
+    }
+
+    void record(Logger logger, Level level, String pattern, int count, Object p0, Object p1, Object p2, Object p3) {
+        ring.get().next(logger, level, null, pattern, null, count, p0, p1, p2, p3, null, false);
+    }
+
+    void record(Logger logger, Level level, Throwable cause, Object message) {
+        ring.get().next(logger, level, cause, null, null, 0, null, null, null, null, message, false);
+    }
+
+    void recordSupplied(Logger logger, Level level, Throwable cause, String pattern, Supplier<?>[] parameters) {
+        ring.get().next(logger, level, cause, pattern, parameters, 0, null, null, null, null, null, true);
+    }
+
+    void recordSupplied(Logger logger, Level level, String pattern, int count, Supplier<?> p0, Supplier<?> p1, Supplier<?> p2, Supplier<?> p3) {
+        ring.get().next(logger, level, null, pattern, null, count, p0, p1, p2, p3, null, true);
+    }
+
+    void recordSupplied(Logger logger, Level level, Throwable cause, Supplier<String> message) {
+        ring.get().next(logger, level, cause, null, null, 0, null, null, null, null, message, true);
+    }
+
+    /**
+     * Append, and forget, the current thread's recorded events.
+     */
+    void replay() {
+        Ring r = ring.get();
+        for (Event event : r.events()) {
+            try {
+                CommonLogger.getBackend().append(new LoggingEvent(
+                    FQCN,
+                    event.logger,
+                    event.timestamp,
+                    event.level,
+                    event.message,
+                    r.threadName,
+                    event.cause != null ? new ThrowableInformation(event.cause) : null,
+                    null,
+                    null,
+                    null));
+            }
+            catch (RuntimeException e) {
+                LogLog.error("unable to replay event", e);
+            }
+        }
+        r.clear();
+    }
+
+    /**
+     * Returns the recorded events of all threads, formatted, oldest first,
+     * one per line.
+     */
+    public String dump() {
+        List<Event> events = new ArrayList<>();
+        for (Ring r : rings) {
+            events.addAll(r.events());
+        }
+        events.sort(Comparator.comparingLong(e -> e.timestamp));
+        StringBuilder text = new StringBuilder();
+        for (Event event : events) {
+            SimpleMessageFormat.formatTo(text, DUMP_LINE,
+                Instant.ofEpochMilli(event.timestamp),
+                event.level,
+                event.threadName,
+                event.logger.getName(),
+                event.cause != null ? event.message + " " + event.cause : event.message);
+        }
+        return text.toString();
+    }
+
+    private Ring newRing() {
+        // forget the rings of threads that have ended
+        rings.removeIf(r -> {
+            Thread t = r.thread.get();
+            return t == null || !t.isAlive();
+        });
+        Ring r = new Ring(Thread.currentThread(), capacity);
+        rings.add(r);
+        return r;
+    }
+
+    /**
+     * One thread's slots. Only the owning thread writes.
+     */
+    private static final class Ring {
+
+        final WeakReference<Thread> thread;
+        final String threadName;
+        final Slot[] slots;
+        volatile long next;
+
+        Ring(Thread thread, int capacity) {
+            this.thread = new WeakReference<>(thread);
+            this.threadName = thread.getName();
+            this.slots = new Slot[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        void next(Logger logger, Level level, Throwable cause, String pattern, Object[] parameters, int count, Object p0, Object p1, Object p2, Object p3, Object message, boolean supplied) {
+            long sequence = next;
+            Slot slot = slots[(int) (sequence % slots.length)];
+            slot.sequence = -1;
+            slot.timestamp = System.currentTimeMillis();
+            slot.logger = logger;
+            slot.level = level;
+            slot.cause = cause;
+            slot.pattern = pattern;
+            slot.parameters = parameters;
+            slot.count = count;
+            slot.p0 = p0;
+            slot.p1 = p1;
+            slot.p2 = p2;
+            slot.p3 = p3;
+            slot.message = message;
+            slot.supplied = supplied;
+            slot.sequence = sequence;
+            next = sequence + 1;
+        }
+
+        List<Event> events() {
+            long end = next;
+            List<Event> events = new ArrayList<>();
+            for (long sequence = Math.max(0, end - slots.length); sequence < end; sequence++) {
+                Slot slot = slots[(int) (sequence % slots.length)];
+                if (slot.sequence != sequence) {
+                    continue;
+                }
+                Event event = new Event(threadName, slot);
+                if (slot.sequence != sequence) {
+                    continue;
+                }
+                event.format();
+                events.add(event);
+            }
+            return events;
+        }
+
+        void clear() {
+            for (Slot slot : slots) {
+                slot.sequence = -1;
+                slot.logger = null;
+                slot.cause = null;
+                slot.parameters = null;
+                slot.p0 = slot.p1 = slot.p2 = slot.p3 = null;
+                slot.message = null;
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        volatile long sequence = -1;
+        long timestamp;
+        Logger logger;
+        Level level;
+        Throwable cause;
+        String pattern;
+        Object[] parameters;
+        int count;
+        Object p0;
+        Object p1;
+        Object p2;
+        Object p3;
+        Object message;
+        boolean supplied; // whether the parameters or message are suppliers
+    }
+
+    /**
+     * A copy of a slot, formatted once copied.
+     */
+    private static final class Event {
+
+        final String threadName;
+        final long timestamp;
+        final Logger logger;
+        final Level level;
+        final Throwable cause;
+        final String pattern;
+        final Object[] parameters;
+        final Object raw;
+        final boolean supplied;
+        String message;
+
+        Event(String threadName, Slot slot) {
+            this.threadName = threadName;
+            this.timestamp = slot.timestamp;
+            this.logger = slot.logger;
+            this.level = slot.level;
+            this.cause = slot.cause;
+            this.pattern = slot.pattern;
+            this.raw = slot.message;
+            this.supplied = slot.supplied;
+            this.parameters = slot.parameters != null
+                ? slot.parameters
+                : Arrays.copyOf(new Object[]{slot.p0, slot.p1, slot.p2, slot.p3}, slot.count);
+        }
+
+        void format() {
+            try {
+                if (pattern == null) {
+                    message = String.valueOf(supplied ? CommonLogger.get((Supplier<?>) raw) : raw);
+                    return;
+                }
+                message = CommonLogger.render(pattern, supplied ? supply(parameters) : parameters);
+            }
+            catch (RuntimeException e) {
+                LogLog.error("unable to call message supplier: pattern=" + pattern, e);
+                message = pattern != null ? pattern : "null";
+            }
+        }
+
+        private static Object[] supply(Object[] suppliers) {
+            Object[] values = new Object[suppliers.length];
+            for (int i = 0; i < suppliers.length; i++) {
+                values[i] = CommonLogger.get((Supplier<?>) suppliers[i]);
+            }
+            return values;
+        }
+    }
+}
+
+// END
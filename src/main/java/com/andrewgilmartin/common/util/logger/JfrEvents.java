@@ -0,0 +1,143 @@
+package com.andrewgilmartin.common.util.logger;
+
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * Emits Java Flight Recorder events for {@link CommonLogger}: one per logged
+ * event with its level, logger, pattern, formatted length and the duration of
+ * its formatting and appending. Events queued by an
+ * {@link AsyncLogDispatcher} are emitted by its background thread.
+ *
+ * While enabled, a recorder listener follows the JVM's recordings and
+ * CommonLogger only takes its slower, measured path while a recording that
+ * does not disable the "com.andrewgilmartin.common.util.logger.Log" event is
+ * running. At other times emitting costs nothing.
+ *
+ * The JFR classes are only loaded when {@link #isAvailable()} and so the
+ * rest of the library runs on JVMs without JFR.
+ */
+public final class JfrEvents {
+
+    // constants
+    private static final boolean AVAILABLE = isPresent("jdk.jfr.FlightRecorderListener");
+    // state
+    private static Object watcher; // a FlightRecorderListener while enabled
+
+    private JfrEvents() {
+        // empty
+    }
+
+    /**
+     * Is JFR available in this JVM?
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Start emitting events while recordings are running. Returns false if JFR
+     * is not available.
+     */
+    public static synchronized boolean enable() {
+        if (!AVAILABLE) {
+            return false;
+        }
+        if (watcher == null) {
+            watcher = Watcher.watch();
+        }
+        return true;
+    }
+
+    /**
+     * Stop emitting events.
+     */
+    public static synchronized void disable() {
+        if (watcher != null) {
+            Watcher.unwatch(watcher);
+            watcher = null;
+            CommonLogger.setTracing(false);
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return watcher != null;
+    }
+
+    /**
+     * Returns a begun event, or null if no recording wants it.
+     */
+    static Object begin() {
+        return JfrLogEvent.start();
+    }
+
+    /**
+     * End and commit the begun event. The pattern, when null, is taken from
+     * the message.
+     */
+    static void commit(Object event, Logger logger, Level level, String pattern, Object message) {
+        JfrLogEvent.commit(event, logger, level, pattern, message);
+    }
+
+    private static boolean isPresent(String className) {
+        try {
+            Class.forName(className, false, JfrEvents.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Tells CommonLogger whether a recording wants the events whenever a
+     * recording changes state.
+     */
+    private static final class Watcher implements FlightRecorderListener {
+
+        static Object watch() {
+            Watcher w = new Watcher();
+            jdk.jfr.FlightRecorder.addListener(w);
+            w.update();
+            return w;
+        }
+
+        static void unwatch(Object watcher) {
+            jdk.jfr.FlightRecorder.removeListener((Watcher) watcher);
+        }
+
+        @Override
+        public void recorderInitialized(jdk.jfr.FlightRecorder recorder) {
+            update();
+        }
+
+        @Override
+        public void recordingStateChanged(Recording recording) {
+            update();
+        }
+
+        private void update() {
+            boolean recorded = false;
+            try {
+                if (jdk.jfr.FlightRecorder.isInitialized()) {
+                    for (Recording r : jdk.jfr.FlightRecorder.getFlightRecorder().getRecordings()) {
+                        if (r.getState() == RecordingState.RUNNING && !"false".equals(r.getSettings().get(JfrLogEvent.NAME + "#enabled"))) {
+                            recorded = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            catch (RuntimeException e) {
+                LogLog.warn("unable to read the flight recordings", e);
+            }
+            CommonLogger.setTracing(recorded);
+        }
+    }
+}
+
+// END
@@ -0,0 +1,96 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.FormattedMessage;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * The Java Flight Recorder event of a {@link CommonLogger} event. Its
+ * duration is the time spent formatting and appending the event. Only used
+ * through {@link JfrEvents} and so only loaded where JFR is available.
+ */
+@Name(JfrLogEvent.NAME)
+@Label("Log Event")
+@Category("CommonLogger")
+@Description("An event logged by CommonLogger; the duration is the time spent formatting and appending it")
+@StackTrace(false)
+final class JfrLogEvent extends jdk.jfr.Event {
+
+    // constants
+    static final String NAME = "com.andrewgilmartin.common.util.logger.Log";
+
+    @Label("Level")
+    String level;
+
+    @Label("Logger")
+    String logger;
+
+    @Label("Pattern")
+    String pattern;
+
+    @Label("Length")
+    @Description("The length of the formatted message, or -1 if the message was not formatted")
+    int length;
+
+    /**
+     * Returns a begun event, or null if no recording wants it.
+     */
+    static Object start() {
+        JfrLogEvent event = new JfrLogEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object begun, Logger logger, Level level, String pattern, Object message) {
+        JfrLogEvent event = (JfrLogEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = level.toString();
+            event.logger = logger.getName();
+            event.pattern = pattern != null ? pattern : pattern(message);
+            event.length = length(message);
+            event.commit();
+        }
+    }
+
+    private static String pattern(Object message) {
+        if (message instanceof CommonLogger.Message) {
+            return ((CommonLogger.Message) message).getPattern();
+        }
+        if (message instanceof FormattedMessage) {
+            return ((FormattedMessage) message).getPattern();
+        }
+        if (message instanceof StructuredMessage) {
+            return ((StructuredMessage) message).getPattern();
+        }
+        return null;
+    }
+
+    private static int length(Object message) {
+        String text = null;
+        if (message instanceof String) {
+            text = (String) message;
+        }
+        else if (message instanceof CommonLogger.Message) {
+            text = ((CommonLogger.Message) message).getText();
+        }
+        else if (message instanceof FormattedMessage) {
+            FormattedMessage m = (FormattedMessage) message;
+            text = m.isFormatted() ? m.toString() : null;
+        }
+        else if (message instanceof StructuredMessage) {
+            text = ((StructuredMessage) message).getText();
+        }
+        return text != null ? text.length() : -1;
+    }
+}
+
+// END
@@ -0,0 +1,271 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.FormattedMessage;
+import com.andrewgilmartin.common.text.JsonEncoder;
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import org.apache.log4j.Level;
+
+/**
+ * Encodes log events as JSON lines, UTF-8 encoded directly into a ByteBuffer.
+ * Each event is one object followed by a newline, eg
+ *
+ * <pre>
+ * {"time":1700000000000,"level":"INFO","logger":"app","thread":"main","message":"user bob logged in","user":"bob","elapsed":12}
+ * </pre>
+ *
+ * The time is in milliseconds since the epoch. The fields of a
+ * {@link StructuredMessage} follow the message, long, double and boolean
+ * fields as JSON literals and other values encoded by {@link JsonEncoder}. A
+ * cause is added as the "exception" member holding its stack trace.
+ *
+ * Numbers and strings are written into the buffer as they are encoded; only
+ * the message, object fields and stack trace are first rendered into a
+ * reused per-thread StringBuilder. Instances are thread-safe.
+ */
+public final class JsonLinesEncoder implements LogEncoder {
+
+    // constants
+    private static final ThreadLocal<StringBuilder> SCRATCH = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    // configured
+    private final JsonEncoder objectEncoder;
+
+    /**
+     * Create an encoder whose object fields are encoded to at most the given
+     * depth and number of elements. See {@link JsonEncoder}.
+     */
+    public JsonLinesEncoder(int maxDepth, int maxElements) {
+        this.objectEncoder = new JsonEncoder(maxDepth, maxElements);
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer buffer, long timestamp, Level level, String loggerName, String threadName, Object message, Throwable cause) {
+        int start = buffer.position();
+        for (;;) {
+            try {
+                write(buffer, timestamp, level, loggerName, threadName, message, cause);
+                return buffer;
+            }
+            catch (BufferOverflowException e) {
+                ((Buffer) buffer).position(start);
+                buffer = grow(buffer);
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer, long timestamp, Level level, String loggerName, String threadName, Object message, Throwable cause) {
+        buffer.put((byte) '{');
+        putKey(buffer, "time", false);
+        putLong(buffer, timestamp);
+        putKey(buffer, "level", true);
+        putString(buffer, level != null ? level.toString() : "null");
+        putKey(buffer, "logger", true);
+        putString(buffer, loggerName);
+        putKey(buffer, "thread", true);
+        putString(buffer, threadName);
+        putKey(buffer, "message", true);
+        StringBuilder text = SCRATCH.get();
+        int mark = text.length(); // the scratch may already be in use further up the stack
+        try {
+            if (message instanceof StructuredMessage) {
+                StructuredMessage structured = (StructuredMessage) message;
+                putString(buffer, structured.formatMessageTo(text), mark);
+                text.setLength(mark);
+                for (int i = 0; i < structured.getFieldCount(); i++) {
+                    putKey(buffer, structured.getFieldKey(i), true);
+                    putField(buffer, structured, i, text, mark);
+                }
+            }
+            else if (message instanceof FormattedMessage) {
+                putString(buffer, ((FormattedMessage) message).formatTo(text), mark);
+                text.setLength(mark);
+            }
+            else {
+                putString(buffer, String.valueOf(message));
+            }
+            if (cause != null) {
+                putKey(buffer, "exception", true);
+                putString(buffer, SimpleMessageFormat.formatTo(text, "{0}", cause), mark);
+                text.setLength(mark);
+            }
+        }
+        finally {
+            text.setLength(mark);
+        }
+        buffer.put((byte) '}');
+        buffer.put((byte) '\n');
+    }
+
+    private void putField(ByteBuffer buffer, StructuredMessage message, int index, StringBuilder text, int mark) {
+        long bits = message.getFieldBits(index);
+        switch (message.getFieldKind(index)) {
+            case StructuredMessage.LONG:
+                putLong(buffer, bits);
+                break;
+            case StructuredMessage.DOUBLE:
+                double value = Double.longBitsToDouble(bits);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    putAscii(buffer, "null");
+                }
+                else {
+                    putAscii(buffer, text.append(value), mark);
+                    text.setLength(mark);
+                }
+                break;
+            case StructuredMessage.BOOLEAN:
+                putAscii(buffer, bits != 0 ? "true" : "false");
+                break;
+            default:
+                Object object = message.getFieldObject(index);
+                if (object == null) {
+                    putAscii(buffer, "null");
+                }
+                else if (object instanceof CharSequence) {
+                    putString(buffer, (CharSequence) object);
+                }
+                else {
+                    // already JSON and so copied as is
+                    putChars(buffer, objectEncoder.encode(text, object), mark);
+                    text.setLength(mark);
+                }
+                break;
+        }
+    }
+
+    private static void putKey(ByteBuffer buffer, String key, boolean comma) {
+        if (comma) {
+            buffer.put((byte) ',');
+        }
+        putString(buffer, key);
+        buffer.put((byte) ':');
+    }
+
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private static void putAscii(ByteBuffer buffer, CharSequence text, int start) {
+        for (int i = start; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(buffer, "-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, CharSequence text) {
+        if (text == null) {
+            putAscii(buffer, "null");
+            return;
+        }
+        buffer.put((byte) '"');
+        putChars(buffer, text, 0, true);
+        buffer.put((byte) '"');
+    }
+
+    private static void putString(ByteBuffer buffer, CharSequence text, int start) {
+        buffer.put((byte) '"');
+        putChars(buffer, text, start, true);
+        buffer.put((byte) '"');
+    }
+
+    private static void putChars(ByteBuffer buffer, CharSequence text, int start) {
+        putChars(buffer, text, start, false);
+    }
+
+    /**
+     * Put the UTF-8 encoding of the characters, escaped for a JSON string if
+     * asked. Unpaired surrogates are encoded as '?'.
+     */
+    private static void putChars(ByteBuffer buffer, CharSequence text, int start, boolean escape) {
+        int length = text.length();
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c == '"' || c == '\\')) {
+                    buffer.put((byte) '\\');
+                    buffer.put((byte) c);
+                }
+                else if (escape && c < 0x20) {
+                    buffer.put((byte) '\\');
+                    switch (c) {
+                        case '\n':
+                            buffer.put((byte) 'n');
+                            break;
+                        case '\r':
+                            buffer.put((byte) 'r');
+                            break;
+                        case '\t':
+                            buffer.put((byte) 't');
+                            break;
+                        default:
+                            buffer.put((byte) 'u');
+                            buffer.put((byte) '0');
+                            buffer.put((byte) '0');
+                            buffer.put(HEX[c >> 4]);
+                            buffer.put(HEX[c & 0xf]);
+                            break;
+                    }
+                }
+                else {
+                    buffer.put((byte) c);
+                }
+            }
+            else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            }
+            else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            }
+            else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    /**
+     * Returns a buffer, direct if the given one is, of twice the capacity
+     * holding a copy of the given buffer's content up to its position.
+     */
+    static ByteBuffer grow(ByteBuffer buffer) {
+        int capacity = Math.max(buffer.capacity() * 2, 256);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        grown.order(buffer.order());
+        ByteBuffer content = buffer.duplicate();
+        ((Buffer) content).flip();
+        grown.put(content);
+        return grown;
+    }
+}
+
+// END
@@ -0,0 +1,75 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apache.log4j.Layout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A Log4j layout that formats events as JSON lines using
+ * {@link JsonLinesEncoder}. Configure, for example, as
+ *
+ * <pre>
+ * log4j.appender.A.layout=com.andrewgilmartin.common.util.logger.JsonLinesLayout
+ * </pre>
+ *
+ * Log4j layouts must return a string and so each event is encoded into a
+ * reused per-thread buffer and then decoded. Sinks that write bytes should
+ * use the encoder directly.
+ */
+public class JsonLinesLayout extends Layout {
+
+    // constants
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+    // configured
+    private int maxDepth = 8;
+    private int maxElements = 100;
+    private JsonLinesEncoder encoder = new JsonLinesEncoder(maxDepth, maxElements);
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public void setMaxElements(int maxElements) {
+        this.maxElements = maxElements;
+    }
+
+    @Override
+    public void activateOptions() {
+        encoder = new JsonLinesEncoder(maxDepth, maxElements);
+    }
+
+    @Override
+    public String format(LoggingEvent event) {
+        ByteBuffer buffer = BUFFERS.get();
+        ((Buffer) buffer).clear();
+        buffer = encoder.encode(buffer, event);
+        BUFFERS.set(buffer);
+        return new String(buffer.array(), buffer.arrayOffset(), buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/x-ndjson";
+    }
+
+    /**
+     * The cause is included in the JSON and so is not also written by the
+     * appender.
+     */
+    @Override
+    public boolean ignoresThrowable() {
+        return false;
+    }
+}
+
+// END
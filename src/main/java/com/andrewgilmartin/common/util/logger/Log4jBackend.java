@@ -0,0 +1,33 @@
+package com.andrewgilmartin.common.util.logger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Gives events to the appenders of their Log4j logger and its ancestors, as
+ * Log4j itself does.
+ */
+public final class Log4jBackend implements LogBackend {
+
+    // constants
+    private static final String FQCN = CommonLogger.class.getName();
+
+    public static final Log4jBackend INSTANCE = new Log4jBackend();
+
+    private Log4jBackend() {
+        // empty
+    }
+
+    @Override
+    public void append(Logger logger, Level level, Object message, Throwable cause) {
+        logger.log(FQCN, level, message, cause);
+    }
+
+    @Override
+    public void append(LoggingEvent event) {
+        event.getLogger().callAppenders(event);
+    }
+}
+
+// END
@@ -0,0 +1,29 @@
+package com.andrewgilmartin.common.util.logger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Where {@link CommonLogger} sends its enabled events. Levels are still
+ * configured with Log4j; the backend only decides what becomes of an event
+ * that is enabled. The default is {@link Log4jBackend}, which gives the
+ * event to the logger's appenders. Install another with
+ * {@link CommonLogger#setBackend(LogBackend)}.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface LogBackend {
+
+    /**
+     * Append an event of the calling thread, as of now.
+     */
+    void append(Logger logger, Level level, Object message, Throwable cause);
+
+    /**
+     * Append an event captured earlier, eg, by an {@link AsyncLogDispatcher}.
+     */
+    void append(LoggingEvent event);
+}
+
+// END
@@ -0,0 +1,49 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.nio.ByteBuffer;
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ * Encodes log events into a ByteBuffer, eg, {@link JsonLinesEncoder} and
+ * {@link BinaryLogEncoder}.
+ */
+public interface LogEncoder {
+
+    /**
+     * Append the event to the buffer. When the buffer is too small it is
+     * replaced by a larger one holding a copy of the given buffer's content up
+     * to its position. Always continue with the returned buffer.
+     */
+    ByteBuffer encode(ByteBuffer buffer, long timestamp, Level level, String loggerName, String threadName, Object message, Throwable cause);
+
+    /**
+     * Append the Log4j event to the buffer. See
+     * {@link #encode(ByteBuffer, long, Level, String, String, Object, Throwable)}.
+     */
+    default ByteBuffer encode(ByteBuffer buffer, LoggingEvent event) {
+        ThrowableInformation information = event.getThrowableInformation();
+        return encode(
+            buffer,
+            event.getTimeStamp(),
+            event.getLevel(),
+            event.getLoggerName(),
+            event.getThreadName(),
+            event.getMessage(),
+            information != null ? information.getThrowable() : null);
+    }
+
+    /**
+     * Called once the bytes of the event the current thread last encoded
+     * are sure to be written. An encoder that writes state once, eg,
+     * {@link BinaryLogEncoder}'s definitions, writes it again in the next
+     * event until then, as the bytes of an event dropped after encoding are
+     * never written.
+     */
+    default void commit() {
+        // empty
+    }
+}
+
+// END
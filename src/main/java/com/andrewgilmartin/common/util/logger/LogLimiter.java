@@ -0,0 +1,210 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Level;
+
+/**
+ * Limits how often a {@link CommonLogger} logs events with the same message
+ * pattern, ie, from the same call site. Each pattern has its own token bucket
+ * that allows a burst of events and then one event per interval. The events
+ * that are not allowed are counted and, before the pattern's next allowed
+ * event or when {@link #emitSummaries()} is called, a summary saying how many
+ * times the pattern repeated is logged at the level of the pattern's last
+ * allowed event.
+ *
+ * A deduplicator is a limiter with a burst of one, ie, the first event in
+ * each window is logged and its repeats within the window are summarized.
+ *
+ * Events without a pattern are limited by their cause's class, or, if they
+ * have no cause, are not limited. A pattern's bucket is dropped once it is
+ * idle, ie, once its theoretical arrival time has passed and its suppressed
+ * events have been summarized, which is when {@link #emitSummaries()} is
+ * called or when there are too many patterns. Only while there are still
+ * too many do new patterns share one bucket, which is summarized as
+ * "{@value #OVERFLOW_PATTERN}".
+ *
+ * An event that is not allowed costs a read and an atomic increment, and an
+ * allowed event one compare-and-set, so the limiter takes no lock even when
+ * many threads log the same pattern. A bucket's count of unsummarized events
+ * also marks it as evicted, so that an event is never counted against a
+ * bucket that is gone.
+ *
+ * Install with {@link CommonLogger#setLimiter(LogLimiter)}.
+ */
+public final class LogLimiter {
+
+    // constants
+    private static final String SUMMARY = "repeated {1} times: {0}";
+    private static final int MAX_PATTERNS = 10000;
+    private static final String OVERFLOW_PATTERN = "<patterns past the first 10000>";
+    private static final long EVICTED = Long.MIN_VALUE; // a bucket's pending count once evicted
+    private static final long EVICTION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // configured
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    // state
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime());
+
+    private LogLimiter(long intervalNanos, int burst) {
+        this.intervalNanos = Math.max(intervalNanos, 1);
+        this.toleranceNanos = this.intervalNanos * (Math.max(burst, 1) - 1);
+    }
+
+    /**
+     * Returns a limiter that allows, per pattern, a burst of events and then
+     * the given number of events per second.
+     */
+    public static LogLimiter rateLimiter(double eventsPerSecond, int burst) {
+        return new LogLimiter((long) (TimeUnit.SECONDS.toNanos(1) / eventsPerSecond), burst);
+    }
+
+    /**
+     * Returns a limiter that allows, per pattern, one event per window.
+     */
+    public static LogLimiter deduplicator(long window, TimeUnit unit) {
+        return new LogLimiter(unit.toNanos(window), 1);
+    }
+
+    /**
+     * Returns the number of events not allowed, and not yet summarized, for
+     * all patterns.
+     */
+    public long getSuppressedCount() {
+        long count = 0;
+        for (Bucket bucket : buckets.values()) {
+            count += Math.max(bucket.pending.get(), 0);
+        }
+        return count;
+    }
+
+    /**
+     * Log a summary for each pattern whose events were suppressed and that
+     * would now allow an event.
+     */
+    public void emitSummaries() {
+        long now = System.nanoTime();
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.theoretical.get() - now <= toleranceNanos) {
+                bucket.emitSummary();
+            }
+        }
+        evictIdle(now);
+    }
+
+    /**
+     * Call {@link #emitSummaries()} periodically using the executor. Cancel
+     * the returned future to stop.
+     */
+    public ScheduledFuture<?> scheduleSummaries(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleAtFixedRate(this::emitSummaries, period, period, unit);
+    }
+
+    /**
+     * Is an event with the pattern allowed? If so, a summary of the pattern's
+     * suppressed events is logged first. An event without a pattern is
+     * always allowed.
+     */
+    boolean allow(CommonLogger logger, Level level, String pattern) {
+        if (pattern == null) {
+            return true;
+        }
+        Bucket bucket = bucket(pattern);
+        AtomicLong theoretical = bucket.theoretical;
+        for (;;) {
+            long tat = theoretical.get();
+            long now = System.nanoTime();
+            if (tat - now > toleranceNanos) {
+                if (bucket.pending.getAndIncrement() >= 0) {
+                    return false;
+                }
+                // evicted since looked up, and so decide again with a new bucket
+                buckets.remove(bucket.pattern, bucket);
+                bucket = bucket(pattern);
+                theoretical = bucket.theoretical;
+                continue;
+            }
+            if (theoretical.compareAndSet(tat, Math.max(tat - now, 0) + now + intervalNanos)) {
+                bucket.logger = logger;
+                bucket.level = level;
+                bucket.emitSummary();
+                return true;
+            }
+        }
+    }
+
+    private Bucket bucket(String pattern) {
+        Bucket bucket = buckets.get(pattern);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_PATTERNS) {
+                long now = System.nanoTime();
+                long next = nextEviction.get();
+                if (now - next >= 0 && nextEviction.compareAndSet(next, now + EVICTION_PERIOD_NANOS)) {
+                    evictIdle(now);
+                }
+                if (buckets.size() >= MAX_PATTERNS) {
+                    pattern = OVERFLOW_PATTERN;
+                }
+            }
+            bucket = buckets.computeIfAbsent(pattern, Bucket::new);
+        }
+        return bucket;
+    }
+
+    /**
+     * Drop the buckets that are idle and so are no different from new ones.
+     * A bucket is marked as evicted, in the same compare-and-set that checks
+     * it has no unsummarized events, before it is removed. A thread still
+     * holding it, having just looked it up, then looks it up again rather
+     * than count an event against it that would never be summarized.
+     */
+    private void evictIdle(long now) {
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.theoretical.get() - now <= 0 && bucket.pending.compareAndSet(0, EVICTED)) {
+                buckets.remove(bucket.pattern, bucket);
+            }
+        }
+    }
+
+    /**
+     * A pattern's token bucket, kept as the theoretical arrival time of the
+     * next event (the generic cell rate algorithm), and its count of
+     * suppressed events not yet summarized, or EVICTED.
+     */
+    private static final class Bucket {
+
+        final String pattern;
+        final AtomicLong theoretical = new AtomicLong(System.nanoTime());
+        final AtomicLong pending = new AtomicLong();
+        volatile CommonLogger logger;
+        volatile Level level;
+
+        Bucket(String pattern) {
+            this.pattern = pattern;
+        }
+
+        void emitSummary() {
+            CommonLogger l = logger;
+            if (l == null) {
+                return;
+            }
+            for (;;) {
+                long p = pending.get();
+                if (p <= 0) {
+                    return;
+                }
+                if (pending.compareAndSet(p, 0)) {
+                    l.summarize(level, SUMMARY, pattern, p);
+                    return;
+                }
+            }
+        }
+    }
+}
+
+// END
@@ -0,0 +1,108 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.log4j.Level;
+
+/**
+ * Counts, by level, one logger's events, the characters of their formatted
+ * messages, and the events dropped by a full {@link AsyncLogDispatcher} or
+ * suppressed by a {@link LogLimiter}. See {@link LoggingMetrics}.
+ */
+public final class LoggerMetrics implements LoggerMetricsMXBean {
+
+    // constants
+    static final String[] LEVEL_NAMES = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL", "OTHER"};
+    // configured
+    private final String name;
+    private final LoggingMetrics owner;
+    // metrics
+    private final LongAdder[] events = newAdders();
+    private final LongAdder[] characters = newAdders();
+    private final LongAdder[] drops = newAdders();
+
+    LoggerMetrics(String name, LoggingMetrics owner) {
+        this.name = name;
+        this.owner = owner;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    LoggingMetrics getOwner() {
+        return owner;
+    }
+
+    @Override
+    public Map<String, Long> getEvents() {
+        return byLevel(events);
+    }
+
+    @Override
+    public Map<String, Long> getCharacters() {
+        return byLevel(characters);
+    }
+
+    @Override
+    public Map<String, Long> getDrops() {
+        return byLevel(drops);
+    }
+
+    void event(Level level) {
+        events[index(level)].increment();
+    }
+
+    void drop(Level level) {
+        drops[index(level)].increment();
+    }
+
+    void formatted(Level level, int length, long nanos) {
+        int index = index(level);
+        characters[index].add(length);
+        owner.formatLatency(index).record(nanos);
+    }
+
+    void appended(Level level, long nanos) {
+        owner.appendLatency(index(level)).record(nanos);
+    }
+
+    static int index(Level level) {
+        switch (level.toInt()) {
+            case Level.TRACE_INT:
+                return 0;
+            case Level.DEBUG_INT:
+                return 1;
+            case Level.INFO_INT:
+                return 2;
+            case Level.WARN_INT:
+                return 3;
+            case Level.ERROR_INT:
+                return 4;
+            case Level.FATAL_INT:
+                return 5;
+            default:
+                return 6;
+        }
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[LEVEL_NAMES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static Map<String, Long> byLevel(LongAdder[] adders) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < adders.length; i++) {
+            counts.put(LEVEL_NAMES[i], adders[i].sum());
+        }
+        return counts;
+    }
+}
+
+// END
@@ -0,0 +1,19 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link LoggerMetrics}. Counts are by level name.
+ */
+public interface LoggerMetricsMXBean {
+
+    String getName();
+
+    Map<String, Long> getEvents();
+
+    Map<String, Long> getCharacters();
+
+    Map<String, Long> getDrops();
+}
+
+// END
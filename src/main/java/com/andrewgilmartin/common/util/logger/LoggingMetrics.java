@@ -0,0 +1,251 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * Measures {@link CommonLogger}: by logger and level, the count of events,
+ * the characters of their formatted messages and the count of dropped or
+ * suppressed events; and by level, histograms of the time spent formatting
+ * messages and handing events to the {@link LogBackend}. Counters are
+ * {@link java.util.concurrent.atomic.LongAdder}s and so measuring does not
+ * contend.
+ *
+ * While enabled the metrics are registered with the platform MBean server as
+ * "com.andrewgilmartin.common.util.logger:type=LoggingMetrics" and, for each
+ * logger, "com.andrewgilmartin.common.util.logger:type=LoggerMetrics,name=...".
+ * When not enabled measuring costs CommonLogger one field read per event.
+ *
+ * A message handed to Log4j unformatted is measured only if it is formatted
+ * by CommonLogger, eg from fixed-arity overloads, and not when it is a
+ * {@link com.andrewgilmartin.common.text.FormattedMessage} or
+ * {@link StructuredMessage} rendered by an appender.
+ */
+public final class LoggingMetrics implements LoggingMetricsMXBean {
+
+    // constants
+    private static final String DOMAIN = "com.andrewgilmartin.common.util.logger";
+    private static final String DUMP_LINE = "{0}: events={1} characters={2} drops={3} format={4} append={5}\n";
+    // shared
+    private static volatile LoggingMetrics current;
+    // state
+    private final ConcurrentMap<String, LoggerMetrics> loggers = new ConcurrentHashMap<>();
+    private final LatencyHistogram[] formatLatency = newHistograms();
+    private final LatencyHistogram[] appendLatency = newHistograms();
+    private volatile boolean registered;
+
+    private LoggingMetrics() {
+        // empty
+    }
+
+    /**
+     * Start measuring, if not already, and register the metrics with the
+     * platform MBean server. Returns the metrics.
+     */
+    public static synchronized LoggingMetrics enable() {
+        if (current == null) {
+            LoggingMetrics metrics = new LoggingMetrics();
+            metrics.registered = true;
+            register(() -> new ObjectName(DOMAIN + ":type=LoggingMetrics"), metrics);
+            current = metrics;
+            CommonLogger.setMetrics(metrics);
+        }
+        return current;
+    }
+
+    /**
+     * Stop measuring and unregister the metrics.
+     */
+    public static synchronized void disable() {
+        LoggingMetrics metrics = current;
+        if (metrics == null) {
+            return;
+        }
+        current = null;
+        CommonLogger.setMetrics(null);
+        metrics.registered = false;
+        unregister(() -> new ObjectName(DOMAIN + ":type=LoggingMetrics"));
+        for (String name : metrics.loggers.keySet()) {
+            unregister(() -> loggerObjectName(name));
+        }
+    }
+
+    /**
+     * Returns the current metrics, or null if not enabled.
+     */
+    public static LoggingMetrics getInstance() {
+        return current;
+    }
+
+    /**
+     * Returns the metrics of the named logger, or null if it has not logged
+     * while measuring.
+     */
+    public LoggerMetrics getLoggerMetrics(String name) {
+        return loggers.get(name);
+    }
+
+    LoggerMetrics forLogger(String name) {
+        LoggerMetrics metrics = loggers.get(name);
+        if (metrics == null) {
+            LoggerMetrics created = new LoggerMetrics(name, this);
+            metrics = loggers.putIfAbsent(name, created);
+            if (metrics == null) {
+                metrics = created;
+                // under disable()'s lock so that it either unregisters this
+                // logger's metrics or they are never registered
+                synchronized (LoggingMetrics.class) {
+                    if (registered) {
+                        register(() -> loggerObjectName(name), created);
+                    }
+                }
+            }
+        }
+        return metrics;
+    }
+
+    LatencyHistogram formatLatency(int index) {
+        return formatLatency[index];
+    }
+
+    LatencyHistogram appendLatency(int index) {
+        return appendLatency[index];
+    }
+
+    @Override
+    public Map<String, Long> getEvents() {
+        Map<String, Long> totals = zeros();
+        for (LoggerMetrics metrics : loggers.values()) {
+            add(totals, metrics.getEvents());
+        }
+        return totals;
+    }
+
+    @Override
+    public Map<String, Long> getCharacters() {
+        Map<String, Long> totals = zeros();
+        for (LoggerMetrics metrics : loggers.values()) {
+            add(totals, metrics.getCharacters());
+        }
+        return totals;
+    }
+
+    @Override
+    public Map<String, Long> getDrops() {
+        Map<String, Long> totals = zeros();
+        for (LoggerMetrics metrics : loggers.values()) {
+            add(totals, metrics.getDrops());
+        }
+        return totals;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getFormatLatency() {
+        return summaries(formatLatency);
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getAppendLatency() {
+        return summaries(appendLatency);
+    }
+
+    /**
+     * Returns the metrics by level, as text, one level per line.
+     */
+    @Override
+    public String dump() {
+        Map<String, Long> events = getEvents();
+        Map<String, Long> characters = getCharacters();
+        Map<String, Long> drops = getDrops();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LoggerMetrics.LEVEL_NAMES.length; i++) {
+            String level = LoggerMetrics.LEVEL_NAMES[i];
+            SimpleMessageFormat.formatTo(text, DUMP_LINE,
+                level,
+                events.get(level),
+                characters.get(level),
+                drops.get(level),
+                formatLatency[i].getSummary(),
+                appendLatency[i].getSummary());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Log {@link #dump()} at INFO periodically using the executor. Cancel the
+     * returned future to stop.
+     */
+    public ScheduledFuture<?> scheduleDump(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        CommonLogger logger = CommonLogger.getLogger(LoggingMetrics.class);
+        return executor.scheduleAtFixedRate(() -> logger.info("logging metrics:\n{0}", dump()), period, period, unit);
+    }
+
+    private static void register(ObjectNameFactory name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name.create());
+        }
+        catch (JMException e) {
+            LogLog.error("unable to register logging metrics", e);
+        }
+    }
+
+    private static void unregister(ObjectNameFactory name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name.create());
+        }
+        catch (JMException e) {
+            LogLog.error("unable to unregister logging metrics", e);
+        }
+    }
+
+    private static ObjectName loggerObjectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=LoggerMetrics,name=" + ObjectName.quote(name));
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[LoggerMetrics.LEVEL_NAMES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private static Map<String, Map<String, Long>> summaries(LatencyHistogram[] histograms) {
+        Map<String, Map<String, Long>> summaries = new LinkedHashMap<>();
+        for (int i = 0; i < histograms.length; i++) {
+            summaries.put(LoggerMetrics.LEVEL_NAMES[i], histograms[i].getSummary());
+        }
+        return summaries;
+    }
+
+    private static Map<String, Long> zeros() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String level : LoggerMetrics.LEVEL_NAMES) {
+            counts.put(level, 0L);
+        }
+        return counts;
+    }
+
+    private static void add(Map<String, Long> totals, Map<String, Long> counts) {
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            totals.merge(count.getKey(), count.getValue(), Long::sum);
+        }
+    }
+
+    private interface ObjectNameFactory {
+
+        ObjectName create() throws JMException;
+    }
+}
+
+// END
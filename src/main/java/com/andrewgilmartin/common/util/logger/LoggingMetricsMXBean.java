@@ -0,0 +1,24 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link LoggingMetrics}. Counts are by level name and
+ * latencies are summaries, in nanoseconds, by level name.
+ */
+public interface LoggingMetricsMXBean {
+
+    Map<String, Long> getEvents();
+
+    Map<String, Long> getCharacters();
+
+    Map<String, Long> getDrops();
+
+    Map<String, Map<String, Long>> getFormatLatency();
+
+    Map<String, Map<String, Long>> getAppendLatency();
+
+    String dump();
+}
+
+// END
@@ -0,0 +1,146 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.spi.ErrorCode;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A Log4j appender that writes to a {@link MappedLogSink}. Configure, for
+ * example, as
+ *
+ * <pre>
+ * log4j.appender.A=com.andrewgilmartin.common.util.logger.MappedFileAppender
+ * log4j.appender.A.Directory=/var/log/app
+ * log4j.appender.A.Prefix=app
+ * log4j.appender.A.SegmentSize=67108864
+ * log4j.appender.A.ForceIntervalMillis=1000
+ * </pre>
+ *
+ * Events are formatted by the layout or, when there is none, encoded by a
+ * {@link JsonLinesEncoder}. Like other appenders events are appended holding
+ * the appender's lock, as layouts such as PatternLayout are not thread-safe.
+ * The sink itself takes no lock and so appenders writing to files of their
+ * own do not contend with each other.
+ */
+public class MappedFileAppender extends AppenderSkeleton {
+
+    // constants
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+    // configured
+    private String directory;
+    private String prefix = "log";
+    private int segmentSize = 64 * 1024 * 1024;
+    private long forceIntervalMillis = 1000;
+    private final JsonLinesEncoder encoder = new JsonLinesEncoder(8, 100);
+    // state
+    private volatile MappedLogSink sink;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getForceIntervalMillis() {
+        return forceIntervalMillis;
+    }
+
+    public void setForceIntervalMillis(long forceIntervalMillis) {
+        this.forceIntervalMillis = forceIntervalMillis;
+    }
+
+    @Override
+    public void activateOptions() {
+        try {
+            sink = new MappedLogSink(Paths.get(directory), prefix, segmentSize, forceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (IOException | RuntimeException e) {
+            errorHandler.error("unable to open log files: directory=" + directory, e, ErrorCode.FILE_OPEN_FAILURE);
+        }
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        MappedLogSink s = sink;
+        if (s == null) {
+            errorHandler.error("no log files for appender: name=" + name);
+            return;
+        }
+        ByteBuffer buffer = BUFFERS.get();
+        ((Buffer) buffer).clear();
+        if (layout == null) {
+            buffer = encoder.encode(buffer, event);
+        }
+        else {
+            buffer = put(buffer, layout.format(event));
+            if (layout.ignoresThrowable()) {
+                String[] lines = event.getThrowableStrRep();
+                if (lines != null) {
+                    for (String line : lines) {
+                        buffer = put(buffer, line);
+                        buffer = put(buffer, System.lineSeparator());
+                    }
+                }
+            }
+        }
+        BUFFERS.set(buffer);
+        ((Buffer) buffer).flip();
+        if (!s.write(buffer)) {
+            errorHandler.error("unable to write event: size=" + buffer.remaining());
+        }
+    }
+
+    private static ByteBuffer put(ByteBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes.length));
+            ((Buffer) buffer).flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        return buffer.put(bytes);
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        MappedLogSink s = sink;
+        if (s != null) {
+            s.close();
+        }
+    }
+}
+
+// END
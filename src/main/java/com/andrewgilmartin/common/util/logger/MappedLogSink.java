@@ -0,0 +1,268 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * Appends encoded log events to memory-mapped files of a fixed size, named
+ * prefix-000001.log, prefix-000002.log, etc, rolling to the next file when the
+ * current one is full. Writing an event reserves its place in the current
+ * file with a compare-and-set and then copies the bytes into the mapped
+ * memory, and so many threads can append at once without a lock or a system
+ * call. An event is never split across files.
+ *
+ * A background thread forces the current file's changes to disk on a
+ * schedule. Once every event reserved in a full file has been copied the file
+ * is forced and truncated to its content. The unwritten tail of the current
+ * file is zero bytes until it is closed.
+ *
+ * A file is truncated while it is still mapped, as Java 8 has no way to unmap
+ * a file, which POSIX systems allow. Where truncation fails, eg on Windows,
+ * the file is left at its full size with a zero tail.
+ */
+public class MappedLogSink implements AutoCloseable {
+
+    // constants
+    private static final int SEALED = Integer.MAX_VALUE / 2; // larger than any segment
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    // configured
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final ScheduledExecutorService forcer;
+    // state
+    private final AtomicLong sequence = new AtomicLong();
+    private final Queue<Segment> retired = new ConcurrentLinkedQueue<>();
+    private volatile Segment current;
+    private volatile boolean closed;
+    // metrics
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Create a sink writing files of the given size in the directory. Files
+     * are forced to disk every force interval.
+     */
+    public MappedLogSink(Path directory, String prefix, int segmentSize, long forceInterval, TimeUnit unit) throws IOException {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segment size must be between 1 and " + MAX_SEGMENT_SIZE + ": segmentSize=" + segmentSize);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.sequence.set(lastSequence());
+        this.current = newSegment();
+        this.forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MappedLogSink-" + prefix);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.forcer.scheduleWithFixedDelay(this::force, forceInterval, forceInterval, unit);
+    }
+
+    /**
+     * Returns the number of events not written because they were larger than
+     * a file or the sink was closed.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the file currently written to.
+     */
+    public Path getCurrentPath() {
+        return current.path;
+    }
+
+    /**
+     * Append the bytes from the buffer's position to its limit. The buffer's
+     * position is not changed. Returns false if the event is larger than a
+     * file or the sink is closed.
+     */
+    public boolean write(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (length > segmentSize || closed) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        for (;;) {
+            Segment segment = current;
+            AtomicInteger reserved = segment.reserved;
+            int position = reserved.get();
+            if (position + length > segmentSize) {
+                if (!roll(segment)) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            }
+            else if (reserved.compareAndSet(position, position + length)) {
+                ByteBuffer target = segment.mapped.duplicate();
+                ((Buffer) target).position(position);
+                target.put(bytes.duplicate());
+                segment.written.addAndGet(length);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Stop writing, force the files to disk and truncate the current file to
+     * its content.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            seal(current);
+        }
+        forcer.shutdown();
+        try {
+            forcer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!retired.isEmpty() && System.nanoTime() < deadline) {
+            force();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Seal the full segment and start the next one, unless another thread
+     * already has. Returns false if the sink is closed.
+     */
+    private synchronized boolean roll(Segment full) {
+        if (closed) {
+            return false;
+        }
+        if (current == full) {
+            seal(full);
+            try {
+                current = newSegment();
+            }
+            catch (IOException e) {
+                LogLog.error("unable to create log file: directory=" + directory, e);
+                closed = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop further reservations in the segment and queue it to be finished
+     * once its reserved events have been copied.
+     */
+    private void seal(Segment segment) {
+        segment.size = Math.min(segment.reserved.getAndSet(SEALED), segmentSize);
+        retired.add(segment);
+    }
+
+    /**
+     * Force the current segment to disk and finish the retired segments whose
+     * events have all been copied.
+     */
+    private void force() {
+        try {
+            Segment segment = current;
+            if (!closed) {
+                segment.mapped.force();
+            }
+            for (Iterator<Segment> i = retired.iterator(); i.hasNext();) {
+                Segment s = i.next();
+                if (s.written.get() == s.size) {
+                    s.finish();
+                    i.remove();
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LogLog.error("unable to force log files: directory=" + directory, e);
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s-%06d.log", prefix, sequence.incrementAndGet()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    /**
+     * Returns the highest sequence of the existing files.
+     */
+    private long lastSequence() throws IOException {
+        long last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(prefix.length() + 1, name.length() - ".log".length());
+                try {
+                    last = Math.max(last, Long.parseLong(number));
+                }
+                catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * A mapped file. Positions up to reserved have been handed out and
+     * written counts the bytes copied into them.
+     */
+    private static final class Segment {
+
+        final Path path;
+        final MappedByteBuffer mapped;
+        final AtomicInteger reserved = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        volatile int size = -1;
+
+        Segment(Path path, MappedByteBuffer mapped) {
+            this.path = path;
+            this.mapped = mapped;
+        }
+
+        /**
+         * Force the content to disk and truncate the file to it. Nothing
+         * touches the mapping past the content once every reserved event
+         * has been copied, and so the mapping outliving the truncation is
+         * harmless.
+         */
+        void finish() throws IOException {
+            mapped.force();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+            catch (IOException e) {
+                LogLog.warn("unable to truncate mapped log file, leaving it at its full size: path=" + path, e);
+            }
+        }
+    }
+}
+
+// END
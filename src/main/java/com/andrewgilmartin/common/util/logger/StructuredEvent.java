@@ -0,0 +1,139 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.Arrays;
+import org.apache.log4j.Level;
+
+/**
+ * Builds a {@link StructuredMessage}, a message with typed key-value fields,
+ * for a {@link CommonLogger}. For example
+ *
+ * <pre>
+ * logger.atInfo().with("user", user).with("elapsed", millis).log("user {0} logged in", user);
+ * </pre>
+ *
+ * When the level is disabled the fields are ignored and nothing is logged or
+ * allocated. Otherwise the builder is a reused per-thread instance. One
+ * started while another is still being built, eg while computing a field's
+ * value, or after another was abandoned without being logged, is a new
+ * instance that then becomes the thread's reused one, so an abandoned event
+ * costs only that one allocation.
+ */
+public final class StructuredEvent {
+
+    // constants
+    static final StructuredEvent DISABLED = new StructuredEvent();
+    private static final ThreadLocal<StructuredEvent> EVENTS = ThreadLocal.withInitial(StructuredEvent::new);
+    private static final int INITIAL_FIELDS = 8;
+    // state
+    private CommonLogger logger;
+    private Level level;
+    private Throwable cause;
+    private int count;
+    private String[] keys = new String[INITIAL_FIELDS];
+    private byte[] kinds = new byte[INITIAL_FIELDS];
+    private long[] bits = new long[INITIAL_FIELDS];
+    private Object[] objects = new Object[INITIAL_FIELDS];
+    private boolean inUse;
+
+    private StructuredEvent() {
+        // empty
+    }
+
+    static StructuredEvent acquire(CommonLogger logger, Level level) {
+        StructuredEvent event = EVENTS.get();
+        if (event.inUse) {
+            event = new StructuredEvent();
+            EVENTS.set(event);
+        }
+        event.inUse = true;
+        event.logger = logger;
+        event.level = level;
+        return event;
+    }
+
+    public StructuredEvent with(String key, long value) {
+        if (logger != null) {
+            add(key, StructuredMessage.LONG, value, null);
+        }
+        return this;
+    }
+
+    public StructuredEvent with(String key, double value) {
+        if (logger != null) {
+            add(key, StructuredMessage.DOUBLE, Double.doubleToRawLongBits(value), null);
+        }
+        return this;
+    }
+
+    public StructuredEvent with(String key, boolean value) {
+        if (logger != null) {
+            add(key, StructuredMessage.BOOLEAN, value ? 1 : 0, null);
+        }
+        return this;
+    }
+
+    public StructuredEvent with(String key, Object value) {
+        if (logger != null) {
+            add(key, StructuredMessage.OBJECT, 0, value);
+        }
+        return this;
+    }
+
+    /**
+     * Log the event with the cause.
+     */
+    public StructuredEvent cause(Throwable cause) {
+        if (logger != null) {
+            this.cause = cause;
+        }
+        return this;
+    }
+
+    /**
+     * Log the event with the message and its fields, and end the event.
+     */
+    public void log(String messageFormat, Object... messageParameters) {
+        if (logger == null) {
+            return;
+        }
+        StructuredMessage message = new StructuredMessage(
+            messageFormat,
+            messageParameters,
+            Arrays.copyOf(keys, count),
+            Arrays.copyOf(kinds, count),
+            Arrays.copyOf(bits, count),
+            Arrays.copyOf(objects, count));
+        CommonLogger l = logger;
+        Level v = level;
+        Throwable c = cause;
+        clear();
+        l.log(v, c, message);
+    }
+
+    private void add(String key, byte kind, long bit, Object object) {
+        if (count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            bits = Arrays.copyOf(bits, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        keys[count] = key;
+        kinds[count] = kind;
+        bits[count] = bit;
+        objects[count] = object;
+        count += 1;
+    }
+
+    private void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(objects, 0, count, null);
+        count = 0;
+        logger = null;
+        level = null;
+        cause = null;
+        inUse = false;
+    }
+}
+
+// END
@@ -0,0 +1,150 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * A message pattern and its arguments along with typed key-value fields. It
+ * is what {@link StructuredEvent} hands to Log4j. A text appender renders it
+ * as the formatted message followed by " key=value" for each field, and
+ * {@link JsonLinesEncoder} encodes the fields as JSON members.
+ *
+ * Long, double and boolean field values are held unboxed.
+ */
+public final class StructuredMessage {
+
+    // field kinds
+    static final byte LONG = 0;
+    static final byte DOUBLE = 1;
+    static final byte BOOLEAN = 2;
+    static final byte OBJECT = 3;
+
+    // configured
+    private final String pattern;
+    private final Object[] arguments;
+    private final String[] keys;
+    private final byte[] kinds;
+    private final long[] bits; // longs, doubles' raw bits, and booleans as 0 or 1
+    private final Object[] objects;
+    // formatted
+    private volatile String text;
+
+    StructuredMessage(String pattern, Object[] arguments, String[] keys, byte[] kinds, long[] bits, Object[] objects) {
+        this.pattern = pattern;
+        this.arguments = arguments;
+        this.keys = keys;
+        this.kinds = kinds;
+        this.bits = bits;
+        this.objects = objects;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns a copy of the arguments.
+     */
+    public Object[] getArguments() {
+        return arguments != null ? arguments.clone() : null;
+    }
+
+    /**
+     * Returns the formatted text, or null if not yet formatted.
+     */
+    String getText() {
+        return text;
+    }
+
+    public int getFieldCount() {
+        return keys.length;
+    }
+
+    public String getFieldKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the field's value, boxed if it is a long, double or boolean.
+     */
+    public Object getFieldValue(int index) {
+        switch (kinds[index]) {
+            case LONG:
+                return bits[index];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[index]);
+            case BOOLEAN:
+                return bits[index] != 0;
+            default:
+                return objects[index];
+        }
+    }
+
+    byte getFieldKind(int index) {
+        return kinds[index];
+    }
+
+    long getFieldBits(int index) {
+        return bits[index];
+    }
+
+    Object getFieldObject(int index) {
+        return objects[index];
+    }
+
+    /**
+     * Append the formatted message, without the fields, to the text. A
+     * misformed pattern is appended as itself.
+     */
+    public StringBuilder formatMessageTo(StringBuilder text) {
+        if (pattern == null) {
+            return text.append("null");
+        }
+        int length = text.length();
+        try {
+            return SimpleMessageFormat.formatTo(text, pattern, arguments);
+        }
+        catch (IllegalArgumentException e) {
+            text.setLength(length);
+            LogLog.error("unable to format message: pattern=" + pattern, e);
+            return text.append(pattern);
+        }
+    }
+
+    /**
+     * Append the formatted message and the fields to the text.
+     */
+    public StringBuilder formatTo(StringBuilder text) {
+        formatMessageTo(text);
+        for (int i = 0; i < keys.length; i++) {
+            text.append(' ').append(keys[i]).append('=');
+            switch (kinds[i]) {
+                case LONG:
+                    text.append(bits[i]);
+                    break;
+                case DOUBLE:
+                    text.append(Double.longBitsToDouble(bits[i]));
+                    break;
+                case BOOLEAN:
+                    text.append(bits[i] != 0);
+                    break;
+                default:
+                    SimpleMessageFormat.formatTo(text, "{0}", objects[i]);
+                    break;
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        String t = text;
+        if (t == null) {
+            t = formatTo(new StringBuilder()).toString();
+            text = t;
+        }
+        return t;
+    }
+}
+
+// END
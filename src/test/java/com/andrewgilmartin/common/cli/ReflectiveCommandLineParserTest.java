@@ -1,5 +1,6 @@
 package com.andrewgilmartin.common.cli;
 
+import com.andrewgilmartin.common.exceptions.CommonIllegalArgumentException;
 import java.util.LinkedList;
 import java.util.List;
 import org.junit.Assert;
@@ -24,6 +25,25 @@ public class ReflectiveCommandLineParserTest {
         Assert.assertEquals("f", instance.position.get(2));
     }
 
+    @Test
+    public void testOuterInstance() {
+        Test2 outer = new Test2();
+        ReflectiveCommandLineParser parser = new ReflectiveCommandLineParser();
+        for (int i = 0; i < 2; i++) {
+            Test2.Inner instance = outer.new Inner();
+            parser.parse(instance, ("--outer o" + i + " --inner i" + i).split(" "), 0);
+            Assert.assertEquals("o" + i, outer.outer);
+            Assert.assertEquals("i" + i, instance.inner);
+        }
+        try {
+            parser.parse(outer.new Inner(), "--unknown".split(" "), 0);
+            Assert.fail();
+        }
+        catch (CommonIllegalArgumentException e) {
+            // expected
+        }
+    }
+
     static class Test1 {
 
         boolean argument0 = false;
@@ -53,4 +73,21 @@ public class ReflectiveCommandLineParserTest {
         
     }
 
+    static class Test2 {
+
+        String outer;
+
+        public void setOuter(String outer) {
+            this.outer = outer;
+        }
+
+        class Inner {
+
+            String inner;
+
+            public void setInner(String inner) {
+                this.inner = inner;
+            }
+        }
+    }
 }
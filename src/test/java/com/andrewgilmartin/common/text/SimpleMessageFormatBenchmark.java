@@ -0,0 +1,69 @@
+package com.andrewgilmartin.common.text;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the static format, a reused instance, and a specialized formatter.
+ * Run with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.andrewgilmartin.common.text.SimpleMessageFormatBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleMessageFormatBenchmark {
+
+    private static final String PATTERN = "request {0} from {1} took {2} ms and returned {3} bytes";
+    private static final SimpleMessageFormat INSTANCE = new SimpleMessageFormat(PATTERN);
+    private static final SpecializedMessageFormat SPECIALIZED = INSTANCE.specialize(String.class, String.class, Double.class, Long.class);
+    private static final MethodHandle HANDLE = SPECIALIZED.getHandle();
+
+    private final Object[] values = {"GET /index.html", "10.0.0.1", 12.5, 5120L};
+    private final StringBuilder text = new StringBuilder(256);
+
+    @Benchmark
+    public String staticFormat() {
+        return SimpleMessageFormat.format(PATTERN, values);
+    }
+
+    @Benchmark
+    public String instanceFormat() {
+        return INSTANCE.format(values);
+    }
+
+    @Benchmark
+    public String specializedFormat() {
+        return SPECIALIZED.format(values);
+    }
+
+    @Benchmark
+    public StringBuilder constantHandle() throws Throwable {
+        text.setLength(0);
+        HANDLE.invokeExact(text, values);
+        return text;
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SimpleMessageFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+}
+
+// END
@@ -0,0 +1,467 @@
+package com.andrewgilmartin.common.text;
+
+import com.andrewgilmartin.common.util.logger.CommonLogger;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimpleMessageFormatTest {
+
+    @Test
+    public void testLiterals() {
+        Assert.assertEquals("", SimpleMessageFormat.format(""));
+        Assert.assertEquals("abc", SimpleMessageFormat.format("abc"));
+        Assert.assertEquals("it's {0}", SimpleMessageFormat.format("it''s '{0}'", "x"));
+    }
+
+    @Test
+    public void testArguments() {
+        Assert.assertEquals("a=1 b=two c=null", SimpleMessageFormat.format("a={0} b={1} c={2}", 1, "two", null));
+        Assert.assertEquals("x {1}", SimpleMessageFormat.format("{0} {1}", "x"));
+        Assert.assertEquals("{0}", SimpleMessageFormat.format("{0}", (Object[]) null));
+        Assert.assertEquals("b a", SimpleMessageFormat.format("{1} {0}", "a", "b"));
+        Assert.assertEquals("x12", SimpleMessageFormat.format("x{12}", 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12));
+    }
+
+    @Test
+    public void testStringStyle() {
+        Assert.assertEquals("abc[...]", SimpleMessageFormat.format("{0,string,:3}", "abcdef"));
+        Assert.assertEquals("[...]bcd[...]", SimpleMessageFormat.format("{0,string,1:3}", "abcdef"));
+        Assert.assertEquals("[...]bcd[...]", SimpleMessageFormat.format("{0,string,1..3}", "abcdef"));
+        Assert.assertEquals("[...]cdef", SimpleMessageFormat.format("{0,string,2}", "abcdef"));
+        Assert.assertEquals("abc", SimpleMessageFormat.format("{0,string,:10}", "abc"));
+    }
+
+    @Test
+    public void testInstance() {
+        SimpleMessageFormat f = new SimpleMessageFormat("{0}-{1}");
+        Assert.assertEquals("{0}-{1}", f.getPattern());
+        Assert.assertEquals("1-2", f.format(1, 2));
+        Assert.assertEquals("3-4", f.format(3, 4));
+        Assert.assertSame(SimpleMessageFormat.getInstance("{0}"), SimpleMessageFormat.getInstance("{0}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMisformed() {
+        new SimpleMessageFormat("{x}");
+    }
+
+    @Test
+    public void testMisformedInstance() {
+        SimpleMessageFormat f = SimpleMessageFormat.getInstance("{x} '{'{0}");
+        Assert.assertSame(f, SimpleMessageFormat.getInstance("{x} '{'{0}"));
+        Assert.assertEquals("{x} '{'{0}", f.format(1));
+        Assert.assertEquals("{0,bogus}", SimpleMessageFormat.format("{0,bogus}", 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedType() {
+        new SimpleMessageFormat("{0,bogus}");
+    }
+
+    @Test
+    public void testNumbers() {
+        Assert.assertEquals("-2147483648 9223372036854775807", SimpleMessageFormat.format("{0} {1}", Integer.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals("NaN NaN", SimpleMessageFormat.format("{0} {1}", Float.NaN, Double.NaN));
+        DecimalFormat expected = new DecimalFormat("#.#", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        double[] values = {0, -0.0, 0.5, -0.04, 0.05, 0.15, 0.25, 12.35, 1e20, 123456789.95, Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY};
+        for (double value : values) {
+            Assert.assertEquals(expected.format(value), SimpleMessageFormat.format("{0}", value));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16));
+            Assert.assertEquals(expected.format(value), SimpleMessageFormat.format("{0}", value));
+            float f = (float) value;
+            Assert.assertEquals(expected.format(f), SimpleMessageFormat.format("{0}", f));
+        }
+        Assert.assertEquals("001.50", SimpleMessageFormat.format("{0,number,000.00}", 1.5));
+    }
+
+    @Test
+    public void testDates() {
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd");
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+        SimpleDateFormat custom = new SimpleDateFormat("EEE, d MMM yyyy hh:mm a 'at' Z");
+        SimpleDateFormat fallback = new SimpleDateFormat("G yyyy-MM-dd z");
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (long) ((random.nextDouble() - 0.5) * 2 * 253402300799999L);
+            Date d = new Date(millis);
+            Timestamp t = new Timestamp(millis);
+            Assert.assertEquals(date.format(d), SimpleMessageFormat.format("{0}", d));
+            Assert.assertEquals(timestamp.format(t), SimpleMessageFormat.format("{0}", t));
+            if (millis > 0) {
+                Assert.assertEquals(custom.format(d), SimpleMessageFormat.format("{0,date,EEE, d MMM yyyy hh:mm a 'at' Z}", d));
+            }
+            Assert.assertEquals(fallback.format(d), SimpleMessageFormat.format("{0,time,G yyyy-MM-dd z}", d));
+        }
+    }
+
+    @Test
+    public void testFormatTo() throws IOException {
+        StringBuilder text = new StringBuilder("> ");
+        Assert.assertSame(text, SimpleMessageFormat.formatTo(text, "{0} {1}", "a", 1));
+        Assert.assertEquals("> a 1", text.toString());
+        StringWriter writer = new StringWriter();
+        char[] big = new char[5000];
+        Arrays.fill(big, 'x');
+        SimpleMessageFormat.formatTo(writer, "[{0}]", new String(big));
+        Assert.assertEquals("[" + new String(big) + "]", writer.toString());
+        Object nested = new Object() {
+            @Override
+            public String toString() {
+                return SimpleMessageFormat.format("<{0}>", "inner");
+            }
+        };
+        Assert.assertEquals("outer <inner>", SimpleMessageFormat.format("outer {0}", nested));
+        SimpleMessageFormat name = new SimpleMessageFormat("name={0}");
+        Assert.assertEquals("name=bob", name.appendTo(new StringBuilder(), "bob").toString());
+        Assert.assertEquals("name=bob", name.appendTo(new StringWriter(), "bob").toString());
+    }
+
+    @Test
+    public void testJson() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        map.put("b", new int[]{1, 2});
+        map.put("c", "x\"y\n");
+        map.put("d", null);
+        map.put("e", new Bean());
+        Assert.assertEquals("{\"a\":1,\"b\":[1,2],\"c\":\"x\\\"y\\n\",\"d\":null,\"e\":{\"count\":3,\"name\":\"bean\",\"ready\":true}}",
+            SimpleMessageFormat.format("{0,json}", map));
+        Assert.assertEquals("[1.5,true,null]", SimpleMessageFormat.format("{0,json}", (Object) new Object[]{1.5, true, Double.NaN}));
+        Assert.assertEquals("null", SimpleMessageFormat.format("{0,json}", (Object) null));
+        List<Object> cycle = new ArrayList<>();
+        cycle.add(cycle);
+        Assert.assertEquals("[\"[cycle]\"]", SimpleMessageFormat.format("{0,json}", cycle));
+        Assert.assertEquals("[[\"[...]\"]]", new JsonEncoder(2, 10).encode(new StringBuilder(), new Object[]{new Object[]{new Object[]{}}}).toString());
+        Assert.assertEquals("[1,2,\"[...]\"]", new JsonEncoder(2, 2).encode(new StringBuilder(), new int[]{1, 2, 3}).toString());
+        Assert.assertEquals("{\"value\":\"[error: java.lang.IllegalStateException: broken]\"}", SimpleMessageFormat.format("{0,json}", new Failing()));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        String expected = SimpleMessageFormat.format("caf\u00e9 {0} {1} \u20ac", "\ud83d\ude00", 42);
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put((byte) '>');
+        buffer = SimpleMessageFormat.formatTo(buffer, "caf\u00e9 {0} {1} \u20ac", "\ud83d\ude00", 42);
+        buffer.flip();
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        Assert.assertEquals(">" + expected, new String(actual, StandardCharsets.UTF_8));
+
+        ByteBuffer small = ByteBuffer.allocateDirect(8);
+        small.put((byte) '>');
+        Assert.assertFalse(SimpleMessageFormat.tryFormatTo(small, "{0} and more", "\u00e9\u00e9\u00e9"));
+        Assert.assertEquals(1, small.position());
+        Assert.assertTrue(SimpleMessageFormat.tryFormatTo(small, "{0}!", "\u00e9\u00e9\u00e9"));
+        Assert.assertEquals(8, small.position());
+
+        SimpleMessageFormat name = new SimpleMessageFormat("name={0}");
+        ByteBuffer named = name.encodeTo(ByteBuffer.allocate(2), "bob");
+        Assert.assertEquals("name=bob", new String(named.array(), 0, named.position(), StandardCharsets.UTF_8));
+        Assert.assertTrue(name.tryEncodeTo(ByteBuffer.allocate(8), "bob"));
+        Assert.assertFalse(name.tryEncodeTo(ByteBuffer.allocate(7), "bob"));
+    }
+
+    @Test
+    public void testFormattedMessage() {
+        Object[] arguments = {"a", 1};
+        FormattedMessage message = new FormattedMessage("{0}={1}", arguments);
+        arguments[0] = "b";
+        Assert.assertFalse(message.isFormatted());
+        Assert.assertEquals("x a=1", message.formatTo(new StringBuilder("x ")).toString());
+        Assert.assertFalse(message.isFormatted());
+        Assert.assertEquals("a=1", message.toString());
+        Assert.assertTrue(message.isFormatted());
+        Assert.assertSame(message.toString(), message.toString());
+        Assert.assertEquals("{x}", new FormattedMessage("{x}", 1).toString());
+    }
+
+    @Test
+    public void testStackTrace() {
+        Exception e = new IllegalStateException("outer", newCause());
+        StringWriter w = new StringWriter();
+        e.printStackTrace(new PrintWriter(w));
+        Assert.assertEquals(w.toString(), SimpleMessageFormat.format("{0}", e));
+        Assert.assertEquals(w.toString(), SimpleMessageFormat.format("{0}", e));
+
+        String n = System.lineSeparator();
+        StackTraceRenderer compact = new StackTraceRenderer(1, new String[]{"org.junit."}, 16);
+        String text = compact.append(new StringBuilder(), e).toString();
+        Assert.assertTrue(text, text.startsWith("java.lang.IllegalStateException: outer" + n + "\tat com.andrewgilmartin.common.text.SimpleMessageFormatTest.testStackTrace("));
+        Assert.assertTrue(text, text.contains(n + "Caused by: java.lang.IllegalArgumentException: inner" + n + "\tat com.andrewgilmartin.common.text.SimpleMessageFormatTest.newCause("));
+        Assert.assertTrue(text, text.endsWith(" more" + n));
+        Assert.assertEquals(text, compact.append(new StringBuilder(), e).toString());
+
+        // the same but for the cause of a suppressed throwable
+        StackTraceRenderer full = new StackTraceRenderer(16);
+        for (String inner : new String[]{"first", "second", "first"}) {
+            Exception cause = new IllegalArgumentException(inner);
+            Exception suppressed = new IllegalStateException("suppressed", cause);
+            Exception outer = new IllegalStateException("outer");
+            outer.addSuppressed(suppressed);
+            for (Exception t : new Exception[]{cause, suppressed, outer}) {
+                t.setStackTrace(e.getStackTrace());
+            }
+            w = new StringWriter();
+            outer.printStackTrace(new PrintWriter(w));
+            Assert.assertEquals(w.toString(), full.append(new StringBuilder(), outer).toString());
+        }
+    }
+
+    @Test
+    public void testSpecialize() {
+        String pattern = "'{'{0}'}' {1} {2} {3,string,:2} {4} {5}";
+        SpecializedMessageFormat f = SimpleMessageFormat.getInstance(pattern).specialize(String.class, Integer.class, Double.class, String.class, Long.class);
+        Object[][] rows = {
+            {"a", 1, 1.25, "abc", 2L, true},
+            {1, "a", null, null, 2, false},
+            {"a", 1, 1.25},
+            {}
+        };
+        for (Object[] row : rows) {
+            Assert.assertEquals(SimpleMessageFormat.format(pattern, row), f.format(row));
+        }
+        Assert.assertEquals("", SimpleMessageFormat.getInstance("").specialize().format());
+    }
+
+    @Test
+    public void testTypeFormatter() {
+        Assert.assertEquals("plain", SimpleMessageFormat.format("{0}", new Plain()));
+        try {
+            SimpleMessageFormat.registerTypeFormatter(Named.class, (text, value) -> text.append("named:").append(value.getName()));
+            Assert.assertEquals("named:plain", SimpleMessageFormat.format("{0}", new Plain()));
+            SimpleMessageFormat.registerTypeFormatter(Plain.class, (text, value) -> text.append("plain!"));
+            Assert.assertEquals("plain! named:sub", SimpleMessageFormat.format("{0} {1}", new Plain(), new Sub()));
+            SimpleMessageFormat.registerTypeFormatter(Plain.class, null);
+            Assert.assertEquals("named:plain", SimpleMessageFormat.format("{0}", new Plain()));
+            SimpleMessageFormat.registerTypeFormatter(Named.class, null);
+            Assert.assertEquals("plain", SimpleMessageFormat.format("{0}", new Plain()));
+        }
+        finally {
+            SimpleMessageFormat.registerTypeFormatter(Plain.class, null);
+            SimpleMessageFormat.registerTypeFormatter(Named.class, null);
+        }
+    }
+
+    interface Named {
+
+        String getName();
+    }
+
+    static class Plain implements Named {
+
+        @Override
+        public String getName() {
+            return "plain";
+        }
+
+        @Override
+        public String toString() {
+            return "plain";
+        }
+    }
+
+    static class Sub extends Named2 {
+    }
+
+    static class Named2 implements Named {
+
+        @Override
+        public String getName() {
+            return "sub";
+        }
+    }
+
+    @Test
+    public void testBulk() throws IOException {
+        Object[][] rows = new Object[10000][];
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{i, "r" + i};
+            expected.append(i).append(",r").append(i).append("\n");
+        }
+        BulkMessageFormat bulk = new BulkMessageFormat(SimpleMessageFormat.getInstance("{0},{1}"), "\n", 100);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assert.assertEquals(expected.toString(), bulk.formatTo(new StringBuilder(), rows).toString());
+            Assert.assertEquals(expected.toString(), bulk.formatTo(new StringBuilder(), rows, pool).toString());
+            Assert.assertEquals(expected.toString(), bulk.formatTo(new StringWriter(), Arrays.asList(rows).iterator()).toString());
+            Assert.assertEquals(expected.toString(), bulk.formatTo(new StringWriter(), Arrays.asList(rows).iterator(), pool).toString());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBounded() {
+        List<Integer> huge = new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        Assert.assertEquals("[0, 1, 2[...]", SimpleMessageFormat.format("{0,string,:8}", huge));
+        Assert.assertEquals("[...]1, 2, 3[...]", SimpleMessageFormat.format("{0,string,4..10}", huge));
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", Arrays.asList(1, 2));
+        map.put("b", map);
+        Assert.assertEquals(map.toString(), SimpleMessageFormat.format("{0,string}", map));
+        Assert.assertEquals("{a=[1, 2],[...]", SimpleMessageFormat.format("{0,string,:10}", map));
+        SimpleMessageFormat.setMaxArgumentLength(5);
+        try {
+            Assert.assertEquals("[0, 1[...] abc 12345[...]", SimpleMessageFormat.format("{0} {1} {2}", huge, "abc", 1234567));
+            Assert.assertEquals("[...] 1, 2[...]", SimpleMessageFormat.format("{0,string,3}", huge));
+            SpecializedMessageFormat specialized = SimpleMessageFormat.getInstance("{0} {1} {2}").specialize(String.class, String.class, Integer.class);
+            Assert.assertEquals("abcde[...] abc 12345[...]", specialized.format("abcdefgh", "abc", 1234567));
+        }
+        finally {
+            SimpleMessageFormat.setMaxArgumentLength(0);
+        }
+    }
+
+    @Test
+    public void testExtractor() {
+        MessageExtractor extractor = SimpleMessageFormat.getInstance("user {1} did {0} at '{'{2}'}'").extractor();
+        Assert.assertArrayEquals(new String[]{"login", "bob", "noon"}, extractor.extract("user bob did login at {noon}"));
+        Assert.assertArrayEquals(new String[]{"", "", ""}, extractor.extract("user  did  at {}"));
+        Assert.assertNull(extractor.extract("user bob did login at noon"));
+        Assert.assertNull(extractor.extract("person bob did login at {noon}"));
+        Assert.assertArrayEquals(new String[]{"a b"}, SimpleMessageFormat.getInstance("{0}").extractor().extract("a b"));
+        Assert.assertArrayEquals(new String[]{"1"}, SimpleMessageFormat.getInstance("{0}={0}").extractor().extract("1=1"));
+        Assert.assertArrayEquals(new String[0], SimpleMessageFormat.getInstance("abc").extractor().extract("abc"));
+        Assert.assertNull(SimpleMessageFormat.getInstance("abc").extractor().extract("abcd"));
+        try {
+            SimpleMessageFormat.getInstance("{0}{1}").extractor();
+            Assert.fail("adjacent arguments");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        ByteBuffer bytes = ByteBuffer.wrap("user \u00fc did x at {\u20ac}".getBytes(StandardCharsets.UTF_8));
+        int[] bounds = new int[6];
+        Assert.assertTrue(extractor.match(bytes, 0, bytes.limit(), bounds));
+        Assert.assertEquals("\u00fc", new String(bytes.array(), bounds[0], bounds[1] - bounds[0], StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMappedMessageScanner() throws IOException {
+        SimpleMessageFormat format = SimpleMessageFormat.getInstance("id={0} name={1}");
+        Path file = Files.createTempFile("scanner", ".log");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long expectedSum = 0;
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                if (i % 3 == 0) {
+                    text.append("noise ").append(i).append("\r\n");
+                }
+                else {
+                    format.appendTo(text, i, "n\u00e9" + i).append('\n');
+                    expectedSum += i;
+                }
+            }
+            Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+            MappedMessageScanner scanner = new MappedMessageScanner(format.extractor(), 1000);
+            LongAdder sum = new LongAdder();
+            Assert.assertEquals(6666, scanner.scan(file, pool, arguments -> {
+                Assert.assertEquals("n\u00e9" + arguments[0], arguments[1]);
+                sum.add(Long.parseLong(arguments[0]));
+            }));
+            Assert.assertEquals(expectedSum, sum.sum());
+            List<String> ids = new ArrayList<>();
+            Assert.assertEquals(6666, scanner.scan(file, arguments -> ids.add(arguments[0])));
+            Assert.assertEquals("1", ids.get(0));
+            Assert.assertEquals("9998", ids.get(ids.size() - 1));
+        }
+        finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLayoutPrefix() throws IOException {
+        StringWriter out = new StringWriter();
+        Logger log4j = Logger.getLogger("com.example.Service");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%d{ISO8601} %p %t %c{2} %m%n"), out)); // ToolBase's layout
+        CommonLogger logger = CommonLogger.getLogger("com.example.Service");
+        logger.info("request failed: id={0} status={1}", 7, 503);
+        logger.info("request done: id={0} status={1}", 8, 200);
+        logger.info("request failed: id={0} status={1}", 9, 500);
+        String text = out.toString();
+        MessageExtractor extractor = SimpleMessageFormat.getInstance("request failed: id={0} status={1}").extractor();
+        String first = text.substring(0, text.indexOf('\n'));
+        Assert.assertTrue(first, first.endsWith(" INFO main example.Service request failed: id=7 status=503"));
+        Assert.assertArrayEquals(new String[]{"7", "503"}, extractor.extract(first));
+        Path file = Files.createTempFile("scanner", ".log");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            List<String> ids = new ArrayList<>();
+            Assert.assertEquals(2, new MappedMessageScanner(extractor, 1000).scan(file, arguments -> ids.add(arguments[0])));
+            Assert.assertEquals(Arrays.asList("7", "9"), ids);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Exception newCause() {
+        return new IllegalArgumentException("inner");
+    }
+
+    public static class Bean {
+
+        public int count = 3;
+
+        public String getName() {
+            return "bean";
+        }
+
+        public boolean isReady() {
+            return true;
+        }
+    }
+
+    public static class Failing {
+
+        public String getValue() {
+            throw new IllegalStateException("broken");
+        }
+    }
+}
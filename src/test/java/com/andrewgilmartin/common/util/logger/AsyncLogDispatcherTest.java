@@ -0,0 +1,187 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncLogDispatcherTest {
+
+    @Test
+    public void testAsync() throws InterruptedException {
+        Logger log4j = Logger.getLogger("AsyncLogDispatcherTest.testAsync");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        CollectingAppender appender = new CollectingAppender(null);
+        log4j.addAppender(appender);
+        CommonLogger logger = CommonLogger.getLogger("AsyncLogDispatcherTest.testAsync");
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(16, AsyncLogDispatcher.OverflowPolicy.BLOCK, null);
+        CommonLogger.setDispatcher(dispatcher);
+        try {
+            MDC.put("user", "bob");
+            for (int i = 0; i < 100; i++) {
+                logger.info("event {0}", i);
+            }
+            MDC.remove("user");
+            logger.debug("not enabled");
+            IllegalStateException cause = new IllegalStateException("failed");
+            logger.error(cause, "failure {0}", "x");
+            Assert.assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        }
+        finally {
+            CommonLogger.setDispatcher(null);
+            dispatcher.close();
+        }
+        Assert.assertEquals(101, appender.events.size());
+        for (int i = 0; i < 100; i++) {
+            LoggingEvent event = appender.events.get(i);
+            Assert.assertEquals("event " + i, event.getRenderedMessage());
+            Assert.assertEquals(Thread.currentThread().getName(), event.getThreadName());
+            Assert.assertEquals("bob", event.getMDC("user"));
+        }
+        LoggingEvent failure = appender.events.get(100);
+        Assert.assertEquals(Level.ERROR, failure.getLevel());
+        Assert.assertEquals("failure x", failure.getRenderedMessage());
+        Assert.assertNull(failure.getMDC("user"));
+        Assert.assertEquals("failed", failure.getThrowableInformation().getThrowable().getMessage());
+        Assert.assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testOverflow() throws InterruptedException {
+        Logger log4j = Logger.getLogger("AsyncLogDispatcherTest.testOverflow");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingAppender appender = new CollectingAppender(release);
+        log4j.addAppender(appender);
+        CommonLogger logger = CommonLogger.getLogger("AsyncLogDispatcherTest.testOverflow");
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(4, AsyncLogDispatcher.OverflowPolicy.DROP_BELOW_LEVEL, Level.WARN);
+        CommonLogger.setDispatcher(dispatcher);
+        try {
+            // the first event holds the consumer in the appender and the next four fill the buffer
+            for (int i = 0; i < 10; i++) {
+                logger.info("event {0}", i);
+            }
+            Assert.assertTrue(dispatcher.getDroppedCount() >= 5);
+            Thread warner = new Thread(() -> logger.warn("kept"));
+            warner.start();
+            release.countDown();
+            warner.join();
+            Assert.assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        }
+        finally {
+            CommonLogger.setDispatcher(null);
+            dispatcher.close();
+        }
+        Assert.assertEquals(10 - dispatcher.getDroppedCount() + 1, appender.events.size());
+        Assert.assertEquals("kept", appender.events.get(appender.events.size() - 1).getRenderedMessage());
+    }
+
+    @Test
+    public void testAppendError() throws InterruptedException {
+        Logger log4j = Logger.getLogger("AsyncLogDispatcherTest.testAppendError");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        CollectingAppender appender = new CollectingAppender(null);
+        log4j.addAppender(appender);
+        CommonLogger logger = CommonLogger.getLogger("AsyncLogDispatcherTest.testAppendError");
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(4, AsyncLogDispatcher.OverflowPolicy.BLOCK, null);
+        CommonLogger.setDispatcher(dispatcher);
+        try {
+            logger.info("fail {0}", "now");
+            for (int i = 0; i < 10; i++) {
+                logger.info("event {0}", i);
+            }
+            Assert.assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        }
+        finally {
+            CommonLogger.setDispatcher(null);
+            dispatcher.close();
+        }
+        Assert.assertEquals(10, appender.events.size());
+        Assert.assertEquals("event 9", appender.events.get(9).getRenderedMessage());
+    }
+
+    @Test
+    public void testCloseWhilePublishing() throws InterruptedException {
+        Logger log4j = Logger.getLogger("AsyncLogDispatcherTest.testCloseWhilePublishing");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        for (int round = 0; round < 10; round++) {
+            log4j.removeAllAppenders();
+            CollectingAppender appender = new CollectingAppender(null);
+            log4j.addAppender(appender);
+            AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(64, AsyncLogDispatcher.OverflowPolicy.BLOCK, null);
+            AtomicBoolean stop = new AtomicBoolean();
+            LongAdder queued = new LongAdder();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    while (!stop.get()) {
+                        if (dispatcher.publish(log4j, Level.INFO, null, "event", null, null)) {
+                            queued.increment();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            Thread.sleep(5);
+            dispatcher.close();
+            stop.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // every queued event is appended
+            Assert.assertEquals(queued.sum(), appender.events.size());
+            Assert.assertTrue(dispatcher.flush(1, TimeUnit.SECONDS));
+        }
+    }
+
+    private static class CollectingAppender extends AppenderSkeleton {
+
+        final List<LoggingEvent> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+
+        CollectingAppender(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        protected void append(LoggingEvent event) {
+            if ("fail now".equals(event.getRenderedMessage())) {
+                throw new LinkageError("failed to append");
+            }
+            if (release != null) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // empty
+        }
+    }
+}
+
+// END
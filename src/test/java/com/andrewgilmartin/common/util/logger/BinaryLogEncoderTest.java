@@ -0,0 +1,136 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.text.FormattedMessage;
+import com.andrewgilmartin.common.text.SimpleMessageFormat;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryLogEncoderTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        Logger.getLogger("BinaryLogEncoderTest.testEncodeDecode").setLevel(Level.INFO);
+        CommonLogger logger = CommonLogger.getLogger("BinaryLogEncoderTest.testEncodeDecode");
+        Date date = new Date(1234567890123L);
+        Object other = new StringBuilder("other");
+        IllegalStateException cause = new IllegalStateException("failed");
+        Path file = Files.createTempFile("BinaryLogEncoderTest", ".bin");
+        try {
+            DirectLogBackend backend = DirectLogBackend.toFile(file, 4096, new BinaryLogEncoder());
+            CommonLogger.setBackend(backend);
+            try {
+                Thread[] threads = new Thread[3];
+                for (int t = 0; t < threads.length; t++) {
+                    int id = t;
+                    threads[t] = new Thread(() -> {
+                        for (int i = 0; i < 100; i++) {
+                            logger.info("t={0} i={1} l={2}", id, (long) i, "héllo 😀");
+                        }
+                    }, "writer-" + t);
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                // lanes are written in no particular order
+                Assert.assertTrue(backend.flush(10, TimeUnit.SECONDS));
+                logger.info("d={0} f={1,number,0.00} b={2} n={3}", date, 2.5, true, null);
+                logger.info("o={0}", other);
+                logger.info(new FormattedMessage("m={0}", 'x'));
+                logger.error(cause, "e={0}", 1);
+                Assert.assertTrue(backend.flush(10, TimeUnit.SECONDS));
+            }
+            finally {
+                CommonLogger.setBackend(null);
+                backend.close();
+            }
+            Assert.assertEquals(0, backend.getDroppedCount());
+
+            StringBuilder text = new StringBuilder();
+            try (InputStream in = Files.newInputStream(file)) {
+                Assert.assertEquals(304, new BinaryLogDecoder().decode(in, text));
+            }
+            String[] lines = text.toString().split("\n");
+            int[] next = new int[3];
+            for (int n = 0; n < 300; n++) {
+                String line = lines[n];
+                int t = line.charAt(line.indexOf(" - t=") + 5) - '0';
+                Assert.assertTrue(line, line.contains(" INFO [writer-" + t + "] BinaryLogEncoderTest.testEncodeDecode - "));
+                Assert.assertTrue(line, line.endsWith(" - t=" + t + " i=" + next[t] + " l=héllo 😀"));
+                next[t] += 1;
+            }
+            Assert.assertTrue(lines[300], lines[300].endsWith(" - " + SimpleMessageFormat.format("d={0} f={1,number,0.00} b={2} n={3}", date, 2.5, true, null)));
+            Assert.assertTrue(lines[301], lines[301].endsWith(" - o=other"));
+            Assert.assertTrue(lines[302], lines[302].endsWith(" - m=x"));
+            Assert.assertTrue(lines[303], lines[303].contains(" ERROR ["));
+            Assert.assertTrue(lines[303], lines[303].endsWith(" - e=1"));
+            Assert.assertEquals(SimpleMessageFormat.format("{0}", cause).split("\n")[0], lines[304]);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDroppedDefinitions() throws Exception {
+        Logger.getLogger("BinaryLogEncoderTest.testDroppedDefinitions").setLevel(Level.INFO);
+        CommonLogger logger = CommonLogger.getLogger("BinaryLogEncoderTest.testDroppedDefinitions");
+        char[] large = new char[5000];
+        Arrays.fill(large, 'x');
+        Path file = Files.createTempFile("BinaryLogEncoderTest", ".bin");
+        try {
+            DirectLogBackend backend = DirectLogBackend.toFile(file, 4096, new BinaryLogEncoder());
+            CommonLogger.setBackend(backend);
+            try {
+                // the first event defines the pattern and names but is larger than a lane
+                logger.info("v={0}", new String(large));
+                logger.info("v={0}", "small");
+                Assert.assertTrue(backend.flush(10, TimeUnit.SECONDS));
+            }
+            finally {
+                CommonLogger.setBackend(null);
+                backend.close();
+            }
+            Assert.assertEquals(1, backend.getDroppedCount());
+
+            StringBuilder text = new StringBuilder();
+            try (InputStream in = Files.newInputStream(file)) {
+                Assert.assertEquals(1, new BinaryLogDecoder().decode(in, text));
+            }
+            Assert.assertTrue(text.toString(), text.toString().endsWith(" INFO [" + Thread.currentThread().getName() + "] BinaryLogEncoderTest.testDroppedDefinitions - v=small\n"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testNamesPastLimit() throws Exception {
+        BinaryLogEncoder encoder = new BinaryLogEncoder(1, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer = encoder.encode(buffer, 0, Level.INFO, "a", "t1", new FormattedMessage("m={0}", 1), null);
+        buffer = encoder.encode(buffer, 0, Level.INFO, "b", "t2", new FormattedMessage("n={0}", 2), null);
+        buffer = encoder.encode(buffer, 0, Level.INFO, "a", "t3", new FormattedMessage("m={0}", 3), null);
+        buffer = encoder.encode(buffer, 0, Level.INFO, null, "t2", "text", null);
+
+        StringBuilder text = new StringBuilder();
+        Assert.assertEquals(4, new BinaryLogDecoder().decode(new ByteArrayInputStream(buffer.array(), 0, buffer.position()), text));
+        String[] lines = text.toString().split("\n");
+        Assert.assertTrue(lines[0], lines[0].endsWith(" INFO [t1] a - m=1"));
+        Assert.assertTrue(lines[1], lines[1].endsWith(" INFO [t2] b - n=2"));
+        Assert.assertTrue(lines[2], lines[2].endsWith(" INFO [t3] a - m=3"));
+        Assert.assertTrue(lines[3], lines[3].endsWith(" INFO [t2] null - text"));
+    }
+}
+
+// END
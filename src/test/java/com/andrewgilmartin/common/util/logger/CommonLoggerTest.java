@@ -0,0 +1,186 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class CommonLoggerTest {
+
+    @Test
+    public void testRegistry() {
+        Assert.assertSame(CommonLogger.getLogger("CommonLoggerTest.testRegistry"), CommonLogger.getLogger("CommonLoggerTest.testRegistry"));
+        Assert.assertSame(CommonLogger.getLogger(CommonLoggerTest.class), CommonLogger.getLogger(CommonLoggerTest.class.getName()));
+    }
+
+    @Test
+    public void testCachedLevels() {
+        Logger parent = Logger.getLogger("CommonLoggerTest.testCachedLevels");
+        parent.setLevel(Level.INFO);
+        CommonLogger logger = CommonLogger.getLogger("CommonLoggerTest.testCachedLevels.child");
+        Assert.assertFalse(logger.isDebugEnabled());
+
+        // a direct level change is seen after a refresh
+        parent.setLevel(Level.DEBUG);
+        Assert.assertFalse(logger.isDebugEnabled());
+        CommonLogger.refreshLevels();
+        Assert.assertTrue(logger.isDebugEnabled());
+        Assert.assertFalse(logger.isTraceEnabled());
+
+        // a configuration change is seen at once
+        parent.setLevel(Level.TRACE);
+        NullAppender appender = new NullAppender();
+        parent.addAppender(appender);
+        Assert.assertTrue(logger.isTraceEnabled());
+        parent.removeAppender(appender);
+    }
+
+    @Test
+    public void testReconfigure() throws Exception {
+        // a category with a level but no appenders, which Log4j reports nothing about
+        Properties properties = new Properties();
+        properties.put("log4j.logger.CommonLoggerTest.testReconfigure", "INFO");
+        CommonLogger.configure(properties);
+        CommonLogger logger = CommonLogger.getLogger("CommonLoggerTest.testReconfigure.Bar");
+        Assert.assertFalse(logger.isDebugEnabled());
+
+        properties.put("log4j.logger.CommonLoggerTest.testReconfigure", "DEBUG");
+        CommonLogger.configure(properties);
+        Assert.assertTrue(Logger.getLogger("CommonLoggerTest.testReconfigure.Bar").isDebugEnabled());
+        Assert.assertTrue(logger.isDebugEnabled());
+
+        Path file = Files.createTempFile("CommonLoggerTest", ".properties");
+        try {
+            Files.write(file, Collections.singletonList("log4j.logger.CommonLoggerTest.testReconfigure=INFO"), StandardCharsets.ISO_8859_1);
+            CommonLogger.configure(file.toUri().toURL());
+            Assert.assertFalse(logger.isDebugEnabled());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFixedArity() {
+        Logger log4j = Logger.getLogger("CommonLoggerTest.testFixedArity");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        StringWriter out = new StringWriter();
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m;"), out));
+        CommonLogger logger = CommonLogger.getLogger("CommonLoggerTest.testFixedArity");
+        logger.info("it''s");
+        logger.info("{0}", "a");
+        logger.info("{0}{1}", "a", "b");
+        logger.info("{0}{1}{2}", "a", "b", "c");
+        logger.info("{0}{1}{2}{3}", "a", "b", "c", "d");
+        logger.info("{0}{1}{2}{3}{4}", "a", "b", "c", "d", "e");
+        logger.info("{0} {1}", (Object) new Object[]{"a"});
+        logger.info("{0} {1}", new Object[]{"a", "b"});
+        logger.warn("{0} {0}", 1234567);
+        logger.warn("{0}", 12345678901L);
+        logger.warn("{0}", 1.5);
+        logger.warn("{0}", true);
+        logger.warn("{0}", 'c');
+        logger.info("{x}", "a");
+        logger.info("{x}{0}{1}{2}{3}{4}", "a", "b", "c", "d", "e");
+        Assert.assertTrue(out.toString().startsWith("it's;a;ab;abc;abcd;abcde;[Ljava.lang.Object;@"));
+        Assert.assertTrue(out.toString().endsWith(" {1};a b;1234567 1234567;12345678901;1.5;true;c;{x};{x}{0}{1}{2}{3}{4};"));
+    }
+
+    @Test
+    public void testSuppliers() {
+        Logger log4j = Logger.getLogger("CommonLoggerTest.testSuppliers");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        StringWriter out = new StringWriter();
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m;"), out));
+        CommonLogger logger = CommonLogger.getLogger("CommonLoggerTest.testSuppliers");
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> expensive = () -> "expensive" + calls.incrementAndGet();
+        logger.debug("{0}", expensive);
+        logger.debug("{0} {1}", expensive, expensive);
+        logger.debug("{0} {1} {2}", expensive, expensive, expensive);
+        logger.debug("{0}{1}{2}{3}{4}", expensive, expensive, expensive, expensive, expensive);
+        logger.debug(expensive);
+        Assert.assertEquals(0, calls.get());
+        logger.info("{0}", expensive);
+        logger.info("{0} {1}", expensive, () -> null);
+        logger.info("{0} {1} {2}", expensive, expensive, expensive);
+        logger.info("{0}{1}{2}{3}{4}", expensive, expensive, expensive, expensive, expensive);
+        logger.info(() -> "whole {0}");
+        Assert.assertEquals(10, calls.get());
+        Assert.assertEquals("expensive1;expensive2 null;expensive3 expensive4 expensive5;expensive6expensive7expensive8expensive9expensive10;whole {0};", out.toString());
+    }
+
+    @Test
+    public void testAllocation() {
+        Logger log4j = Logger.getLogger("CommonLoggerTest.testAllocation");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new NullAppender());
+        CommonLogger logger = CommonLogger.getLogger("CommonLoggerTest.testAllocation");
+        int calls = 100000;
+
+        Runnable disabled = () -> {
+            for (int i = 0; i < calls; i++) {
+                logger.debug("a={0} b={1}", "a", "b");
+                logger.debug("a={0}", 1000L + i);
+                logger.trace("a={0}", 0.5 + i);
+                logger.trace("a={0}", i % 2 == 0);
+                int n = i;
+                logger.debug("a={0}", () -> "a" + n);
+            }
+        };
+        Assert.assertEquals("disabled bytes per call", 0, allocated(disabled) / (calls * 5));
+
+        // the Log4j event and the unrendered message do not escape the null
+        // appender, unless other appenders have made Log4j's appender calls
+        // too polymorphic for the JIT to see that
+        String message = "a=123456";
+        long direct = allocated(() -> {
+            for (int i = 0; i < calls; i++) {
+                log4j.info(message);
+            }
+        });
+        Assume.assumeTrue("Log4j's own event is eliminated", direct == 0);
+        Runnable enabled = () -> {
+            for (int i = 0; i < calls; i++) {
+                logger.info("a={0} b={1}", "a", "b");
+                logger.info("a={0}", 1000 + i);
+                logger.warn("a={0}", 0.5 + i);
+                logger.error("a");
+            }
+        };
+        Assert.assertEquals("enabled bytes per call", 0, allocated(enabled) / (calls * 4));
+    }
+
+    /**
+     * Returns the bytes the current thread allocates when running the task,
+     * after running it a few times to let the JIT compile it.
+     */
+    private static long allocated(Runnable task) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        for (int i = 0; i < 10; i++) {
+            task.run();
+        }
+        long start = threads.getThreadAllocatedBytes(id);
+        task.run();
+        return threads.getThreadAllocatedBytes(id) - start;
+    }
+}
+
+// END
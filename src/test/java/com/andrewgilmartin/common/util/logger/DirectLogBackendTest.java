@@ -0,0 +1,118 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectLogBackendTest {
+
+    @Test
+    public void testDirectBackend() throws Exception {
+        StringWriter out = new StringWriter();
+        Logger log4j = Logger.getLogger("DirectLogBackendTest.testDirectBackend");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m%n"), out));
+        CommonLogger logger = CommonLogger.getLogger("DirectLogBackendTest.testDirectBackend");
+        Path file = Files.createTempFile("DirectLogBackendTest", ".log");
+        try {
+            DirectLogBackend backend = DirectLogBackend.toFile(file, 4096);
+            Assert.assertSame(Log4jBackend.INSTANCE, CommonLogger.setBackend(backend));
+            try {
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    int id = t;
+                    threads[t] = new Thread(() -> {
+                        for (int i = 0; i < 1000; i++) {
+                            logger.info("t={0} i={1}", id, i);
+                        }
+                    }, "writer-" + t);
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                logger.debug("not enabled");
+                logger.error(new IllegalStateException("failed"), "done");
+                char[] large = new char[5000];
+                Arrays.fill(large, 'x');
+                logger.info(new String(large));
+                Assert.assertTrue(backend.flush(10, TimeUnit.SECONDS));
+            }
+            finally {
+                Assert.assertSame(backend, CommonLogger.setBackend(null));
+                backend.close();
+            }
+            Assert.assertEquals(1, backend.getDroppedCount());
+            Assert.assertEquals("", out.toString());
+            logger.info("after");
+            Assert.assertEquals("after\n", out.toString());
+
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            Assert.assertEquals(4001, lines.size());
+            Assert.assertEquals(Files.size(file), backend.getWrittenCount());
+            int[] next = new int[4];
+            for (String line : lines.subList(0, 4000)) {
+                Assert.assertTrue(line, line.startsWith("{\"time\":"));
+                int t = line.charAt(line.indexOf("\"message\":\"t=") + 13) - '0';
+                Assert.assertTrue(line, line.contains("\"thread\":\"writer-" + t + "\""));
+                Assert.assertTrue(line, line.contains("\"message\":\"t=" + t + " i=" + next[t] + "\""));
+                next[t] += 1;
+            }
+            Assert.assertTrue(lines.get(4000).contains("\"level\":\"ERROR\""));
+            Assert.assertTrue(lines.get(4000).contains("\"exception\":\"java.lang.IllegalStateException: failed"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCloseWhileAppending() throws Exception {
+        Logger log4j = Logger.getLogger("DirectLogBackendTest.testCloseWhileAppending");
+        for (int round = 0; round < 10; round++) {
+            Path file = Files.createTempFile("DirectLogBackendTest", ".log");
+            try {
+                DirectLogBackend backend = DirectLogBackend.toFile(file, 4096);
+                AtomicBoolean stop = new AtomicBoolean();
+                LongAdder appended = new LongAdder();
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    threads[t] = new Thread(() -> {
+                        while (!stop.get()) {
+                            backend.append(log4j, Level.INFO, "event", null);
+                            appended.increment();
+                        }
+                    });
+                    threads[t].start();
+                }
+                Thread.sleep(5);
+                backend.close();
+                stop.set(true);
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                // every event is either written or counted as dropped
+                long lines = Files.readAllLines(file, StandardCharsets.UTF_8).size();
+                Assert.assertEquals(appended.sum(), lines + backend.getDroppedCount());
+            }
+            finally {
+                Files.delete(file);
+            }
+        }
+    }
+}
+
+// END
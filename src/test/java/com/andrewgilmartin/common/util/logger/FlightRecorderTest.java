@@ -0,0 +1,97 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FlightRecorderTest {
+
+    @Test
+    public void testRecorder() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        Logger log4j = Logger.getLogger("FlightRecorderTest.testRecorder");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%p [%t] %m%n"), out));
+        CommonLogger logger = CommonLogger.getLogger("FlightRecorderTest.testRecorder");
+        FlightRecorder recorder = new FlightRecorder(4, Level.DEBUG);
+        Assert.assertNull(CommonLogger.setRecorder(recorder));
+        try {
+            Assert.assertFalse(logger.isDebugEnabled());
+            for (int i = 0; i < 6; i++) {
+                logger.debug("a={0}", i);
+            }
+            logger.debug("b={0} c={1}", "x", new StringBuilder("y"), 1, 2, 3);
+            logger.trace("not recorded");
+            logger.info("shown");
+            Assert.assertEquals("INFO [main] shown\n", out.toString());
+
+            Thread other = new Thread(() -> logger.debug("other"), "other");
+            other.start();
+            other.join();
+            String dump = recorder.dump();
+            Assert.assertFalse(dump.contains("a=2"));
+            Assert.assertTrue(dump.contains(" DEBUG [main] FlightRecorderTest.testRecorder - a=3\n"));
+            Assert.assertTrue(dump.contains("b=x c=y"));
+            Assert.assertTrue(dump.contains("[other] FlightRecorderTest.testRecorder - other\n"));
+            Assert.assertFalse(dump.contains("not recorded"));
+
+            logger.error("failed {0}", "here");
+            Assert.assertEquals(
+                "INFO [main] shown\n"
+                + "DEBUG [main] a=3\n"
+                + "DEBUG [main] a=4\n"
+                + "DEBUG [main] a=5\n"
+                + "DEBUG [main] b=x c=y\n"
+                + "ERROR [main] failed here\n",
+                out.toString());
+            logger.fatal("again");
+            Assert.assertTrue(out.toString().endsWith("failed here\nFATAL [main] again\n"));
+        }
+        finally {
+            Assert.assertSame(recorder, CommonLogger.setRecorder(null));
+        }
+        logger.debug("a={0}", 6);
+        logger.error("failed");
+        Assert.assertTrue(out.toString().endsWith("again\nERROR [main] failed\n"));
+    }
+
+    @Test
+    public void testRecordedSuppliers() {
+        StringWriter out = new StringWriter();
+        Logger log4j = Logger.getLogger("FlightRecorderTest.testRecordedSuppliers");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%p %m%n"), out));
+        CommonLogger logger = CommonLogger.getLogger("FlightRecorderTest.testRecordedSuppliers");
+        AtomicInteger calls = new AtomicInteger();
+        FlightRecorder recorder = new FlightRecorder(4, Level.DEBUG);
+        CommonLogger.setRecorder(recorder);
+        try {
+            logger.debug("a={0}", () -> calls.incrementAndGet());
+            logger.debug(() -> "b=" + calls.incrementAndGet());
+            logger.debug("c={0}{1}{2}{3}{4}", () -> calls.incrementAndGet(), () -> 0, () -> 0, () -> 0, () -> 0);
+            // pushed out of the ring and so never replayed
+            for (int i = 0; i < 4; i++) {
+                logger.debug("d={0}", i);
+            }
+            Assert.assertEquals(0, calls.get());
+
+            logger.debug("e={0}", () -> calls.incrementAndGet());
+            Assert.assertEquals(0, calls.get());
+            logger.error("failed");
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals("DEBUG d=1\nDEBUG d=2\nDEBUG d=3\nDEBUG e=1\nERROR failed\n", out.toString());
+        }
+        finally {
+            CommonLogger.setRecorder(null);
+        }
+    }
+}
+
+// END
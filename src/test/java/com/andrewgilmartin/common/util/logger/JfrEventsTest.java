@@ -0,0 +1,82 @@
+package com.andrewgilmartin.common.util.logger;
+
+import com.andrewgilmartin.common.cli.ToolBase;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JfrEventsTest {
+
+    @Test
+    public void testEvents() throws Exception {
+        Logger.getLogger("JfrEventsTest.testEvents").setLevel(Level.INFO);
+        WriterAppender appender = new WriterAppender(new PatternLayout("%m%n"), new StringWriter());
+        Logger.getRootLogger().addAppender(appender);
+        CommonLogger logger = CommonLogger.getLogger("JfrEventsTest.testEvents");
+        Assert.assertTrue(JfrEvents.isAvailable());
+        Assert.assertTrue(JfrEvents.enable());
+        Path file = Files.createTempFile("JfrEventsTest", ".jfr");
+        try {
+            Assert.assertFalse(CommonLogger.isTracing());
+            logger.info("before {0}", 0);
+            try (Recording recording = new Recording()) {
+                recording.enable(JfrLogEvent.NAME);
+                recording.enable("com.andrewgilmartin.common.cli.ToolPhase");
+                recording.start();
+                Assert.assertTrue(CommonLogger.isTracing());
+                logger.info("during {0}", 1);
+                logger.warn("during {0} {1}", 1, 2, 3, 4, 5);
+                logger.debug("not enabled {0}", 2);
+                new ToolBase() {
+                    @Override
+                    public void execute() {
+                        // the tool's own logger
+                        logger.info("executing");
+                    }
+                }.run(new String[0]);
+                recording.stop();
+                Assert.assertFalse(CommonLogger.isTracing());
+                logger.info("after {0}", 3);
+                recording.dump(file);
+            }
+            List<String> logged = new ArrayList<>();
+            List<String> phases = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if (name.equals(JfrLogEvent.NAME)) {
+                    logged.add(event.getString("logger") + " " + event.getString("level") + " " + event.getString("pattern") + " " + event.getInt("length"));
+                }
+                else if (name.equals("com.andrewgilmartin.common.cli.ToolPhase")) {
+                    phases.add(event.getString("phase"));
+                }
+            }
+            Assert.assertEquals(3, logged.size());
+            Assert.assertTrue(logged.toString(), logged.contains("JfrEventsTest.testEvents INFO during {0} 8"));
+            Assert.assertTrue(logged.toString(), logged.contains("JfrEventsTest.testEvents WARN during {0} {1} 10"));
+            Assert.assertTrue(logged.toString(), logged.contains(JfrEventsTest.class.getName() + "$1 INFO executing 9"));
+            Assert.assertTrue(phases.toString(), phases.contains("initialize"));
+            Assert.assertTrue(phases.toString(), phases.contains("construct"));
+            Assert.assertTrue(phases.toString(), phases.contains("parse"));
+            Assert.assertTrue(phases.toString(), phases.contains("execute"));
+        }
+        finally {
+            Logger.getRootLogger().removeAppender(appender);
+            JfrEvents.disable();
+            Files.delete(file);
+        }
+        Assert.assertFalse(CommonLogger.isTracing());
+    }
+}
+
+// END
@@ -0,0 +1,84 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonLinesEncoderTest {
+
+    @Test
+    public void testStructuredEvent() {
+        Logger log4j = Logger.getLogger("JsonLinesEncoderTest.testStructuredEvent");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        StringWriter text = new StringWriter();
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m%n"), text));
+        StringWriter json = new StringWriter();
+        log4j.addAppender(new WriterAppender(new JsonLinesLayout(), json));
+        CommonLogger logger = CommonLogger.getLogger("JsonLinesEncoderTest.testStructuredEvent");
+
+        logger.atDebug().with("ignored", 1).log("not enabled");
+        logger.atInfo()
+            .with("user", "b\u00f6b \"the\" builder")
+            .with("count", 3)
+            .with("ratio", 0.5)
+            .with("nan", Double.NaN)
+            .with("ready", true)
+            .with("tags", Arrays.asList("a", "b"))
+            .with("none", null)
+            .log("user {0} logged in", "bob");
+
+        Assert.assertEquals("user bob logged in user=b\u00f6b \"the\" builder count=3 ratio=0.5 nan=NaN ready=true tags=[a, b] none=null\n", text.toString());
+        String line = json.toString();
+        Assert.assertTrue(line, line.startsWith("{\"time\":"));
+        Assert.assertTrue(line, line.endsWith(",\"level\":\"INFO\",\"logger\":\"JsonLinesEncoderTest.testStructuredEvent\",\"thread\":\""
+            + Thread.currentThread().getName()
+            + "\",\"message\":\"user bob logged in\",\"user\":\"b\u00f6b \\\"the\\\" builder\",\"count\":3,\"ratio\":0.5,\"nan\":null,\"ready\":true,\"tags\":[\"a\",\"b\"],\"none\":null}\n"));
+    }
+
+    @Test
+    public void testAbandonedEvent() {
+        Logger log4j = Logger.getLogger("JsonLinesEncoderTest.testAbandonedEvent");
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        StringWriter text = new StringWriter();
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m%n"), text));
+        CommonLogger logger = CommonLogger.getLogger("JsonLinesEncoderTest.testAbandonedEvent");
+
+        logger.atInfo().with("abandoned", true);
+        StructuredEvent event = logger.atInfo();
+        event.with("n", 1).log("first");
+        StructuredEvent again = logger.atInfo();
+        Assert.assertSame(event, again);
+        again.with("n", 2).with("nested", nested(logger)).log("second");
+        Assert.assertEquals("first n=1\nnested n=3\nsecond n=2 nested=3\n", text.toString());
+    }
+
+    private static int nested(CommonLogger logger) {
+        logger.atInfo().with("n", 3).log("nested");
+        return 3;
+    }
+
+    @Test
+    public void testEncoder() {
+        JsonLinesEncoder encoder = new JsonLinesEncoder(4, 10);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer = encoder.encode(buffer, 1234567890123L, Level.WARN, "a.b", "t\u0001", "line\nbreak \ud83d\ude00", null);
+        buffer = encoder.encode(buffer, -5L, Level.ERROR, "a.b", "t", null, new IllegalStateException("boom"));
+        String lines = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        String[] split = lines.split("\n");
+        Assert.assertEquals(2, split.length);
+        Assert.assertEquals("{\"time\":1234567890123,\"level\":\"WARN\",\"logger\":\"a.b\",\"thread\":\"t\\u0001\",\"message\":\"line\\nbreak \ud83d\ude00\"}", split[0]);
+        Assert.assertTrue(split[1], split[1].startsWith("{\"time\":-5,\"level\":\"ERROR\",\"logger\":\"a.b\",\"thread\":\"t\",\"message\":\"null\",\"exception\":\"java.lang.IllegalStateException: boom"));
+        Assert.assertTrue(split[1], split[1].contains("\\n\\tat com.andrewgilmartin.common.util.logger.JsonLinesEncoderTest.testEncoder"));
+    }
+}
+
+// END
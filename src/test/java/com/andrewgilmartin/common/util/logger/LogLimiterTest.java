@@ -0,0 +1,152 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogLimiterTest {
+
+    @Test
+    public void testRateLimiter() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        CommonLogger logger = newLogger("LogLimiterTest.testRateLimiter", out);
+        LogLimiter limiter = LogLimiter.rateLimiter(1.0 / 3600, 10);
+        logger.setLimiter(limiter);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    logger.warn("flood {0}", i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.warn("other");
+        Assert.assertEquals(11, count(out.toString(), "\n"));
+        Assert.assertEquals(39990, limiter.getSuppressedCount());
+        limiter.emitSummaries();
+        Assert.assertEquals(11, count(out.toString(), "\n"));
+    }
+
+    @Test
+    public void testDeduplicator() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        CommonLogger logger = newLogger("LogLimiterTest.testDeduplicator", out);
+        LogLimiter limiter = LogLimiter.deduplicator(50, TimeUnit.MILLISECONDS);
+        logger.setLimiter(limiter);
+        for (int i = 0; i < 10; i++) {
+            logger.info("dup {0}", i);
+        }
+        Assert.assertEquals("dup 0\n", out.toString());
+        Thread.sleep(100);
+        limiter.emitSummaries();
+        Assert.assertEquals("dup 0\nrepeated 9 times: dup {0}\n", out.toString());
+        Assert.assertEquals(0, limiter.getSuppressedCount());
+        for (int i = 0; i < 3; i++) {
+            logger.info("dup {0}", i);
+        }
+        Thread.sleep(100);
+        logger.info("dup {0}", 3);
+        Assert.assertEquals("dup 0\nrepeated 9 times: dup {0}\ndup 0\nrepeated 2 times: dup {0}\ndup 3\n", out.toString());
+        logger.setLimiter(null);
+        logger.info("dup {0}", 4);
+        logger.info("dup {0}", 5);
+        Assert.assertTrue(out.toString().endsWith("dup 3\ndup 4\ndup 5\n"));
+    }
+
+    @Test
+    public void testIdlePatterns() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        CommonLogger logger = newLogger("LogLimiterTest.testIdlePatterns", out);
+        logger.setLimiter(LogLimiter.deduplicator(100, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 10000; i++) {
+            logger.info("idle " + i);
+        }
+        Thread.sleep(150);
+        out.getBuffer().setLength(0);
+        logger.info("a {0}", 1);
+        logger.info("a {0}", 2);
+        logger.info("b {0}", 1);
+        for (int i = 0; i < 3; i++) {
+            int n = i;
+            logger.info(() -> "supplied " + n);
+        }
+        Assert.assertEquals("a 1\nb 1\nsupplied 0\nsupplied 1\nsupplied 2\n", out.toString());
+        logger.setLimiter(null);
+    }
+
+    @Test
+    public void testEvictionWhileSuppressing() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        CommonLogger logger = newLogger("LogLimiterTest.testEvictionWhileSuppressing", out);
+        LogLimiter limiter = LogLimiter.deduplicator(1, TimeUnit.MICROSECONDS);
+        logger.setLimiter(limiter);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    logger.info("race {0}", i);
+                }
+            });
+            threads[t].start();
+        }
+        while (threads[0].isAlive()) {
+            limiter.emitSummaries();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Thread.sleep(10);
+        limiter.emitSummaries();
+        long total = 0;
+        for (String line : out.toString().split("\n")) {
+            total += line.startsWith("repeated ") ? Long.parseLong(line.split(" ")[1]) : 1;
+        }
+        Assert.assertEquals(80000, total);
+        logger.setLimiter(null);
+    }
+
+    @Test
+    public void testOverflowPattern() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        CommonLogger logger = newLogger("LogLimiterTest.testOverflowPattern", out);
+        LogLimiter limiter = LogLimiter.deduplicator(500, TimeUnit.MILLISECONDS);
+        logger.setLimiter(limiter);
+        for (int i = 0; i < 10000; i++) {
+            logger.info("active " + i);
+        }
+        out.getBuffer().setLength(0);
+        logger.info("overflow {0}", 1);
+        logger.info("other {0}", 1);
+        Thread.sleep(600);
+        limiter.emitSummaries();
+        Assert.assertEquals("overflow 1\nrepeated 1 times: <patterns past the first 10000>\n", out.toString());
+        logger.setLimiter(null);
+    }
+
+    private static CommonLogger newLogger(String name, StringWriter out) {
+        Logger log4j = Logger.getLogger(name);
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m%n"), out));
+        return CommonLogger.getLogger(name);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count += 1;
+        }
+        return count;
+    }
+}
+
+// END
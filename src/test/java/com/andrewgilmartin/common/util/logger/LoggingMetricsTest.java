@@ -0,0 +1,90 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoggingMetricsTest {
+
+    @Test
+    public void testMetrics() throws Exception {
+        String name = "LoggingMetricsTest.testMetrics";
+        StringWriter out = new StringWriter();
+        Logger log4j = Logger.getLogger(name);
+        log4j.setLevel(Level.INFO);
+        log4j.setAdditivity(false);
+        log4j.addAppender(new WriterAppender(new PatternLayout("%m%n"), out));
+        CommonLogger logger = CommonLogger.getLogger(name);
+        LoggingMetrics metrics = LoggingMetrics.enable();
+        try {
+            logger.info("hello {0}", "world");
+            logger.info("{0} {1} {2} {3} {4}", 1, 2, 3, 4, 5);
+            logger.debug("not {0}", "enabled");
+            logger.setLimiter(LogLimiter.deduplicator(1, TimeUnit.HOURS));
+            for (int i = 0; i < 3; i++) {
+                logger.info("dup {0}", i);
+            }
+            logger.setLimiter(null);
+            Assert.assertEquals("hello world\n1 2 3 4 5\ndup 0\n", out.toString());
+
+            LoggerMetrics m = metrics.getLoggerMetrics(name);
+            Assert.assertNotNull(m);
+            Assert.assertEquals(Long.valueOf(3), m.getEvents().get("INFO"));
+            Assert.assertEquals(Long.valueOf(0), m.getEvents().get("DEBUG"));
+            Assert.assertEquals(Long.valueOf(25), m.getCharacters().get("INFO"));
+            Assert.assertEquals(Long.valueOf(2), m.getDrops().get("INFO"));
+            Assert.assertTrue(metrics.getFormatLatency().get("INFO").get("count") >= 3);
+            Assert.assertTrue(metrics.getAppendLatency().get("INFO").get("count") >= 3);
+            Assert.assertTrue(metrics.dump().contains("INFO: events="));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            TabularData events = (TabularData) server.getAttribute(
+                new ObjectName("com.andrewgilmartin.common.util.logger:type=LoggerMetrics,name=" + ObjectName.quote(name)),
+                "Events");
+            CompositeData info = events.get(new Object[]{"INFO"});
+            Assert.assertEquals(3L, info.get("value"));
+            Assert.assertTrue(server.isRegistered(new ObjectName("com.andrewgilmartin.common.util.logger:type=LoggingMetrics")));
+            // one failure to unregister does not stop the others
+            server.unregisterMBean(new ObjectName("com.andrewgilmartin.common.util.logger:type=LoggingMetrics"));
+        }
+        finally {
+            LoggingMetrics.disable();
+        }
+        Assert.assertNull(LoggingMetrics.getInstance());
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName("com.andrewgilmartin.common.util.logger:type=LoggingMetrics")));
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName("com.andrewgilmartin.common.util.logger:type=LoggerMetrics,name=" + ObjectName.quote(name))));
+        logger.info("after");
+        Assert.assertTrue(out.toString().endsWith("dup 0\nafter\n"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10);
+        }
+        Map<String, Long> summary = histogram.getSummary();
+        Assert.assertEquals(Long.valueOf(100), summary.get("count"));
+        Assert.assertEquals(Long.valueOf(505), summary.get("mean"));
+        Assert.assertEquals(Long.valueOf(1000), summary.get("max"));
+        long p50 = histogram.getPercentile(50);
+        Assert.assertTrue(p50 >= 500 && p50 < 1024);
+        Assert.assertEquals(1000, histogram.getPercentile(99));
+    }
+}
+
+// END
@@ -0,0 +1,118 @@
+package com.andrewgilmartin.common.util.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedLogSinkTest {
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        Path directory = Files.createTempDirectory("MappedLogSinkTest");
+        try {
+            MappedLogSink sink = new MappedLogSink(directory, "test", 1000, 10, TimeUnit.MILLISECONDS);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        Assert.assertTrue(sink.write(ByteBuffer.wrap(("event " + id + " " + i + "\n").getBytes(StandardCharsets.UTF_8))));
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertFalse(sink.write(ByteBuffer.allocate(1001)));
+            Assert.assertEquals(1, sink.getRejectedCount());
+            sink.close();
+            Assert.assertFalse(sink.write(ByteBuffer.allocate(1)));
+
+            Set<String> lines = new HashSet<>();
+            for (Path file : files(directory)) {
+                byte[] content = Files.readAllBytes(file);
+                Assert.assertTrue(content.length <= 1000);
+                String text = new String(content, StandardCharsets.UTF_8);
+                Assert.assertEquals(-1, text.indexOf('\0'));
+                Assert.assertTrue(text.isEmpty() || text.endsWith("\n"));
+                for (String line : text.split("\n")) {
+                    if (!line.isEmpty()) {
+                        Assert.assertTrue(line, lines.add(line));
+                    }
+                }
+            }
+            Assert.assertEquals(4000, lines.size());
+
+            // a new sink continues the sequence
+            try (MappedLogSink next = new MappedLogSink(directory, "test", 1000, 10, TimeUnit.MILLISECONDS)) {
+                List<Path> files = files(directory);
+                Assert.assertEquals(files.get(files.size() - 1), next.getCurrentPath());
+            }
+        }
+        finally {
+            for (Path file : files(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testAppender() throws IOException {
+        Path directory = Files.createTempDirectory("MappedLogSinkTest");
+        try {
+            MappedFileAppender appender = new MappedFileAppender();
+            appender.setDirectory(directory.toString());
+            appender.setPrefix("app");
+            appender.setLayout(new PatternLayout("%p %m%n"));
+            appender.activateOptions();
+            Logger log4j = Logger.getLogger("MappedLogSinkTest.testAppender");
+            log4j.setLevel(Level.INFO);
+            log4j.setAdditivity(false);
+            log4j.addAppender(appender);
+            CommonLogger logger = CommonLogger.getLogger("MappedLogSinkTest.testAppender");
+            logger.info("one {0}", 1);
+            logger.warn("two {0}", 2);
+            log4j.removeAppender(appender);
+            appender.close();
+            List<Path> files = files(directory);
+            Assert.assertEquals(1, files.size());
+            String nl = System.lineSeparator();
+            Assert.assertEquals("INFO one 1" + nl + "WARN two 2" + nl, new String(Files.readAllBytes(files.get(0)), StandardCharsets.UTF_8));
+        }
+        finally {
+            for (Path file : files(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
+
+// END